@@ -0,0 +1,92 @@
+package com.example.quizgenbackend.benchmarks;
+
+import com.example.quizgenbackend.generator.CompilationBatch;
+import com.example.quizgenbackend.generator.Executor;
+import com.example.quizgenbackend.generator.OutputFormat;
+import com.example.quizgenbackend.generator.QuizArchive;
+import com.example.quizgenbackend.generator.QuizGenerator;
+import com.example.quizgenbackend.generator.QuizTemplate;
+import com.example.quizgenbackend.generator.TemplateParser;
+import com.example.quizgenbackend.generator.ThreadFactories;
+import com.example.quizgenbackend.generator.VariableContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Many quizzes at once, the load spring.threads.virtual.enabled is meant for: every JMH thread is a client whose
+// request is handled on a thread from ThreadFactories, as Tomcat's would be, and whose questions run on the
+// question-execution pool. virtualThreads=true needs Java 21+; on Java 17 run it with -p virtualThreads=false.
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(32)
+@State(Scope.Benchmark)
+public class ConcurrentGenerationBenchmark {
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    @Param({Templates.CODE_HEAVY, Templates.CHOICES})
+    public String template;
+
+    private QuizTemplate parsed;
+    private ExecutorService requests;
+
+    @Setup
+    public void setUp() {
+        Templates.silenceStdout();
+        if (ThreadFactories.setVirtual(virtualThreads) != virtualThreads) {
+            throw new IllegalStateException("Java " + Runtime.version().feature() + " has no virtual threads");
+        }
+        // The pools take their thread factory when they are built, as GeneratorConfig builds them at startup
+        CompilationBatch.setParallelism(Executor.sandbox().maxConcurrent());
+        requests = Executors.newCachedThreadPool(ThreadFactories.named("request-"));
+        parsed = TemplateParser.parse(Templates.load(template));
+    }
+
+    @TearDown
+    public void tearDown() {
+        requests.shutdownNow();
+        ThreadFactories.setVirtual(false);
+        CompilationBatch.setParallelism(Executor.sandbox().maxConcurrent());
+    }
+
+    @Benchmark
+    public String generatePreview() throws Exception {
+        return handle(() -> QuizGenerator.generateQuizFile(parsed, new VariableContext(new Random(ThreadLocalRandom.current().nextLong())),
+                EnumSet.of(OutputFormat.TEXT)).plainText);
+    }
+
+    @Benchmark
+    public Object renderArchive() throws Exception {
+        return handle(() -> {
+            QuizArchive.write(parsed, new VariableContext(new Random(ThreadLocalRandom.current().nextLong())), OutputStream.nullOutputStream());
+            return null;
+        });
+    }
+
+    private <T> T handle(Callable<T> request) throws InterruptedException, ExecutionException {
+        return requests.submit(request).get();
+    }
+}
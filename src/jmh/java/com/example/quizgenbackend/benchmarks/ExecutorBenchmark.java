@@ -0,0 +1,48 @@
+package com.example.quizgenbackend.benchmarks;
+
+import com.example.quizgenbackend.generator.Executor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// One :Code: snippet through Executor.compileAndExecute: once with its bytecode already cached, the way repeat
+// generations of a quiz run, and once with source javac has not seen yet
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Thread)
+public class ExecutorBenchmark {
+    private static final String CODE = "int total = 0;\n" +
+            "for (int i = 1; i <= 12; i++) {\n" +
+            "    total += i * i;\n" +
+            "}\n" +
+            "System.out.println(\"[\" + total + \"]\");\n";
+
+    private long uncached;
+
+    @Setup
+    public void setUp() {
+        Templates.silenceStdout();
+    }
+
+    @Benchmark
+    public String cachedBytecode() {
+        return Executor.compileAndExecute(CODE);
+    }
+
+    @Benchmark
+    public String freshSource() {
+        return Executor.compileAndExecute(CODE + "System.out.println(" + uncached++ + "L);\n");
+    }
+}
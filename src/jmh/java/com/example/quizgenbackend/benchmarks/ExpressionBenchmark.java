@@ -0,0 +1,58 @@
+package com.example.quizgenbackend.benchmarks;
+
+import com.example.quizgenbackend.generator.EvaluateExpression;
+import com.example.quizgenbackend.generator.QuizGenerator;
+import com.example.quizgenbackend.generator.VariableContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Solution: expressions and #var# substitution, the per-question work that involves no javac
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ExpressionBenchmark {
+    private static final String EXPRESSION = "#R1# * (1 + #R2# / 100) ^ #R3# - sqrt(#R1# ^ 2 + #R2# ^ 2) % 7";
+    private static final String LINE = "A deposit of #R1# dollars earns #R2#% interest for #R3# years, so #R1# grows.";
+
+    private VariableContext variables;
+    private String substituted;
+
+    @Setup
+    public void setUp() {
+        Templates.silenceStdout();
+        variables = new VariableContext(new Random(42));
+        variables.putInt("R1", 2500);
+        variables.putDouble("R2", 4.5);
+        variables.putInt("R3", 7);
+        substituted = QuizGenerator.replaceVariables(EXPRESSION, variables);
+    }
+
+    @Benchmark
+    public double evaluateSubstituted() {
+        return EvaluateExpression.evaluateExpression(substituted);
+    }
+
+    @Benchmark
+    public double evaluateWithVariables() {
+        return EvaluateExpression.evaluateExpression(EXPRESSION, variables);
+    }
+
+    @Benchmark
+    public String replaceVariables() {
+        return QuizGenerator.replaceVariables(LINE, variables);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.quizgenbackend.benchmarks;
+
+import com.example.quizgenbackend.QuizOutput;
+import com.example.quizgenbackend.generator.OutputFormat;
+import com.example.quizgenbackend.generator.QuizArchive;
+import com.example.quizgenbackend.generator.QuizGenerator;
+import com.example.quizgenbackend.generator.QuizTemplate;
+import com.example.quizgenbackend.generator.TemplateParser;
+import com.example.quizgenbackend.generator.VariableContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Whole quizzes from the corpus: generateQuizFile with every format, the text-only preview of /quiz/output,
+// and the streamed DOCX and CSV archive of /quiz/generate. Every invocation draws new values, so the output is never reused.
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Thread)
+public class GenerationBenchmark {
+    @Param({Templates.ARITHMETIC, Templates.CODE_HEAVY, Templates.CHOICES, Templates.LONG_TEXT})
+    public String template;
+
+    private String input;
+    private QuizTemplate parsed;
+    private long seed;
+
+    @Setup
+    public void setUp() {
+        Templates.silenceStdout();
+        input = Templates.load(template);
+        parsed = TemplateParser.parse(input);
+    }
+
+    @Benchmark
+    public QuizOutput generateQuizFile() {
+        return QuizGenerator.generateQuizFile(input, new VariableContext(new Random(seed++)));
+    }
+
+    @Benchmark
+    public QuizOutput generatePreview() {
+        return QuizGenerator.generateQuizFile(parsed, new VariableContext(new Random(seed++)), EnumSet.of(OutputFormat.TEXT));
+    }
+
+    @Benchmark
+    public void renderArchive() throws IOException {
+        QuizArchive.write(parsed, new VariableContext(new Random(seed++)), OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public QuizTemplate parseTemplate() {
+        return TemplateParser.parse(input);
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.quizgenbackend.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+// The benchmark corpus in src/jmh/resources/templates, one quiz per kind of workload
+final class Templates {
+    static final String ARITHMETIC = "arithmetic";
+    static final String CODE_HEAVY = "code-heavy";
+    static final String CHOICES = "choices";
+    static final String LONG_TEXT = "long-text";
+
+    private Templates() {
+    }
+
+    static String load(String name) {
+        try (InputStream in = Templates.class.getResourceAsStream("/templates/" + name + ".txt")) {
+            if (in == null) {
+                throw new IllegalArgumentException("No benchmark template " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Outside Spring Boot logback logs at debug to stdout, every generated quiz included, which would drown the JMH output
+    static void silenceStdout() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.quizgenbackend.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Passes everything through to the wrapped stream and keeps a copy, as long as the copy stays within the limit
+public class CapturingOutputStream extends FilterOutputStream {
+    private final long limit;
+    private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+    public CapturingOutputStream(OutputStream out, long limit) {
+        super(out);
+        this.limit = limit;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        keep(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        keep(b, off, len);
+    }
+
+    // Everything written so far, or null once it outgrew the limit
+    public byte[] captured() {
+        return copy == null ? null : copy.toByteArray();
+    }
+
+    private void keep(byte[] b, int off, int len) {
+        if (copy == null) {
+            return;
+        }
+        if (copy.size() + len > limit) {
+            copy = null;
+        } else {
+            copy.write(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.quizgenbackend.cache;
+
+// Finished responses by template, seed and format. A seeded generation draws every #var# value from that seed,
+// so a repeated request can be answered from here, or with 304 when the client still has its copy. The ZIP and
+// DOCX carry fixed timestamps, so two generations are the same bytes and the ETag is strong.
+public class OutputCache {
+    public static final WeightedLruCache<String, byte[]> CACHE = new WeightedLruCache<>(32L * 1024 * 1024, bytes -> bytes.length);
+
+    // The build that generated the output. It is part of every key and so of every ETag, so a copy a client kept
+    // from before a deploy no longer matches. Without build information every start counts as a new build.
+    private static volatile String version = "started-" + System.currentTimeMillis();
+
+    public static void setVersion(String buildVersion) {
+        version = buildVersion;
+    }
+
+    public static String version() {
+        return version;
+    }
+
+    public static String key(String format, String input, long seed) {
+        return format + ":" + seed + ":" + version + ":" + ContentHash.sha256(input);
+    }
+
+    public static String etag(String key) {
+        return "\"" + ContentHash.sha256(key).substring(0, 32) + "\"";
+    }
+
+    // Whether an If-None-Match header names the ETag, compared weakly as RFC 9110 asks for
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*") || candidate.equals(etag) || candidate.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.quizgenbackend.config;
+
+import com.example.quizgenbackend.cache.OutputCache;
+import com.example.quizgenbackend.generator.CompilationBatch;
+import com.example.quizgenbackend.generator.CompilerPool;
+import com.example.quizgenbackend.generator.ExecutionSandbox;
+import com.example.quizgenbackend.generator.Executor;
+import com.example.quizgenbackend.generator.TemplateParser;
+import com.example.quizgenbackend.generator.ThreadFactories;
+import com.example.quizgenbackend.generator.VariantGenerator;
+import com.example.quizgenbackend.generator.WorkerPool;
+import com.example.quizgenbackend.jobs.QuizJobs;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Pushes the quizgen.* settings from application.properties into the static generator classes
+@Configuration
+public class GeneratorConfig {
+    private static final Logger log = LoggerFactory.getLogger(GeneratorConfig.class);
+
+    public GeneratorConfig(@Value("${quizgen.executor.class-cache.max-bytes:33554432}") long classCacheMaxBytes,
+                           @Value("${quizgen.executor.parameterized-code:true}") boolean parameterizedCode,
+                           @Value("${quizgen.compiler.pool-size:0}") int compilerPoolSize,
+                           @Value("${quizgen.executor.max-concurrent:0}") int maxConcurrentExecutions,
+                           @Value("${quizgen.executor.queue-capacity:" + ExecutionSandbox.DEFAULT_QUEUE_CAPACITY + "}") int executionQueueCapacity,
+                           @Value("${quizgen.executor.queue-timeout-ms:" + ExecutionSandbox.DEFAULT_QUEUE_TIMEOUT_MILLIS + "}") long executionQueueTimeoutMillis,
+                           @Value("${quizgen.executor.wall-clock-ms:" + ExecutionSandbox.DEFAULT_WALL_CLOCK_MILLIS + "}") long executionWallClockMillis,
+                           @Value("${quizgen.executor.cpu-time-ms:" + ExecutionSandbox.DEFAULT_CPU_TIME_MILLIS + "}") long executionCpuTimeMillis,
+                           @Value("${quizgen.executor.mode:in-process}") String executionMode,
+                           @Value("${quizgen.executor.worker.count:2}") int workerCount,
+                           @Value("${quizgen.executor.worker.max-heap:256m}") String workerMaxHeap,
+                           @Value("${quizgen.template.cache.max-bytes:8388608}") long templateCacheMaxBytes,
+                           @Value("${quizgen.variants.max-count:500}") int maxVariants,
+                           @Value("${quizgen.variants.parallelism:0}") int variantParallelism,
+                           @Value("${quizgen.jobs.threads:2}") int jobThreads,
+                           @Value("${quizgen.jobs.queue-capacity:16}") int jobQueueCapacity,
+                           @Value("${quizgen.jobs.result-store.max-bytes:67108864}") long jobResultMaxBytes,
+                           @Value("${quizgen.jobs.result-ttl-seconds:600}") long jobResultTtlSeconds,
+                           @Value("${quizgen.output-cache.max-bytes:33554432}") long outputCacheMaxBytes,
+                           @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                           ObjectProvider<BuildProperties> buildProperties) throws IOException {
+        // Before any pool is created; Spring Boot itself only switches Tomcat over on Java 21+
+        if (virtualThreads && !ThreadFactories.setVirtual(true)) {
+            log.warn("spring.threads.virtual.enabled is set, but Java {} has no virtual threads; using platform threads",
+                    Runtime.version().feature());
+        }
+        TemplateParser.CACHE.setMaxWeight(templateCacheMaxBytes);
+        OutputCache.CACHE.setMaxWeight(outputCacheMaxBytes);
+        // META-INF/build-info.properties, written by the build-info goal of the Spring Boot plugin
+        BuildProperties build = buildProperties.getIfAvailable();
+        if (build != null && build.getTime() != null) {
+            OutputCache.setVersion(build.getVersion() + "@" + build.getTime().toEpochMilli());
+        }
+        VariantGenerator.setMaxVariants(maxVariants);
+        VariantGenerator.setParallelism(variantParallelism > 0 ? variantParallelism : Runtime.getRuntime().availableProcessors());
+        QuizJobs.configure(jobThreads, jobQueueCapacity, jobResultMaxBytes, TimeUnit.SECONDS.toMillis(jobResultTtlSeconds));
+        Executor.CLASS_CACHE.setMaxWeight(classCacheMaxBytes);
+        Executor.setParameterizedCode(parameterizedCode);
+
+        // Build and warm the compilers at startup so the first quiz does not pay for loading javac
+        CompilerPool compilerPool = new CompilerPool(compilerPoolSize > 0 ? compilerPoolSize : Runtime.getRuntime().availableProcessors());
+        compilerPool.warmUp();
+        Executor.setCompilerPool(compilerPool);
+
+        int maxConcurrent = maxConcurrentExecutions > 0 ? maxConcurrentExecutions : Runtime.getRuntime().availableProcessors();
+        Executor.setSandbox(new ExecutionSandbox(maxConcurrent,
+                executionQueueCapacity, executionQueueTimeoutMillis, executionWallClockMillis, executionCpuTimeMillis));
+
+        if (executionMode.equals("worker-pool")) {
+            Executor.setWorkerPool(new WorkerPool(workerCount, workerMaxHeap));
+            CompilationBatch.setParallelism(Math.max(maxConcurrent, workerCount));
+        } else if (executionMode.equals("in-process")) {
+            CompilationBatch.setParallelism(maxConcurrent);
+        } else {
+            throw new IllegalArgumentException("Unknown quizgen.executor.mode " + executionMode + ", expected in-process or worker-pool");
+        }
+    }
+
+    @PreDestroy
+    public void shutDown() {
+        WorkerPool workerPool = Executor.workerPool();
+        if (workerPool != null) {
+            Executor.setWorkerPool(null);
+            workerPool.close();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.quizgenbackend.config;
+
+import com.example.quizgenbackend.cache.OutputCache;
+import com.example.quizgenbackend.cache.WeightedLruCache;
+import com.example.quizgenbackend.generator.Executor;
+import com.example.quizgenbackend.generator.QuizGenerator;
+import com.example.quizgenbackend.generator.TemplateParser;
+import com.example.quizgenbackend.generator.WorkerPool;
+import com.example.quizgenbackend.jobs.QuizJobs;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.ToDoubleFunction;
+
+// Gauges and counters over the generator's own bookkeeping. The per-stage timers are registered by
+// GeneratorMetrics as they are first used. Everything is read through the static accessors when scraped,
+// so pools and sandboxes swapped in by GeneratorConfig are always the ones reported.
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder executionMetrics() {
+        return registry -> {
+            Gauge.builder("quizgen.executions.active", () -> Executor.sandbox().activeCount())
+                    .description("DynamicCode runs holding a sandbox slot")
+                    .register(registry);
+            Gauge.builder("quizgen.executions.queued", () -> Executor.sandbox().queueDepth())
+                    .description("DynamicCode runs waiting for a sandbox slot")
+                    .register(registry);
+            executionCounter(registry, "completed", () -> Executor.sandbox().completedCount());
+            executionCounter(registry, "timed-out", () -> Executor.sandbox().timeoutCount());
+            executionCounter(registry, "rejected", () -> Executor.sandbox().rejectionCount());
+            // Timed-out runs once more, split by whether their thread could be stopped
+            executionCounter(registry, "cancelled", () -> Executor.sandbox().cancellationCount());
+            executionCounter(registry, "abandoned", () -> Executor.sandbox().abandonedCount());
+
+            Gauge.builder("quizgen.dynamic.classes.loaded", Executor::loadedClassCount)
+                    .description("DynamicCode classes whose class loader has not been collected yet")
+                    .register(registry);
+            FunctionCounter.builder("quizgen.dynamic.classes.defined", Executor.class, executor -> Executor.definedClassCount())
+                    .description("DynamicCode classes defined since startup")
+                    .register(registry);
+            FunctionCounter.builder("quizgen.choices.fast-path", QuizGenerator.class, generator -> QuizGenerator.choicesFastPathCount())
+                    .description("MC questions whose choices were used without compiling them")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder compilerMetrics() {
+        return registry -> {
+            Gauge.builder("quizgen.compiler.workers", () -> Executor.compilerPool().size())
+                    .description("javac workers in the pool")
+                    .register(registry);
+            Gauge.builder("quizgen.compiler.idle", () -> Executor.compilerPool().idleCount())
+                    .description("javac workers free to borrow")
+                    .register(registry);
+            Gauge.builder("quizgen.compiler.queued", () -> Executor.compilerPool().queueDepth())
+                    .description("Compilations waiting for a javac worker")
+                    .register(registry);
+            FunctionTimer.builder("quizgen.compiler.wait", Executor.class,
+                            executor -> Executor.compilerPool().borrowCount(),
+                            executor -> Executor.compilerPool().totalWaitNanos(), TimeUnit.NANOSECONDS)
+                    .description("Time compilations waited to borrow a javac worker")
+                    .register(registry);
+            TimeGauge.builder("quizgen.compiler.wait.max", Executor.class, TimeUnit.NANOSECONDS,
+                            executor -> Executor.compilerPool().maxWaitNanos())
+                    .description("Longest wait for a javac worker since startup")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder cacheMetrics() {
+        return registry -> {
+            cache(registry, "class", Executor.CLASS_CACHE);
+            cache(registry, "template", TemplateParser.CACHE);
+            cache(registry, "output", OutputCache.CACHE);
+        };
+    }
+
+    @Bean
+    public MeterBinder jobMetrics() {
+        return registry -> {
+            Gauge.builder("quizgen.jobs.pending", QuizJobs::pendingCount)
+                    .description("Generation jobs queued or running")
+                    .register(registry);
+            Gauge.builder("quizgen.jobs.queued", QuizJobs::queueDepth)
+                    .description("Generation jobs waiting for a thread")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder workerMetrics() {
+        return registry -> {
+            workerCounter(registry, "quizgen.workers.batches", WorkerPool::batchCount);
+            workerCounter(registry, "quizgen.workers.restarts", WorkerPool::restartCount);
+            workerCounter(registry, "quizgen.workers.failed-batches", WorkerPool::failedBatchCount);
+        };
+    }
+
+    private static void executionCounter(MeterRegistry registry, String outcome, LongSupplier count) {
+        FunctionCounter.builder("quizgen.executions", count, LongSupplier::getAsLong)
+                .description("DynamicCode runs by how they ended")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private static void cache(MeterRegistry registry, String name, WeightedLruCache<?, ?> cache) {
+        Gauge.builder("quizgen.cache.size", cache, WeightedLruCache::size)
+                .tag("cache", name)
+                .register(registry);
+        Gauge.builder("quizgen.cache.weight", cache, WeightedLruCache::weight)
+                .description("Bytes held, as weighed by the cache")
+                .tag("cache", name)
+                .register(registry);
+        FunctionCounter.builder("quizgen.cache.requests", cache, WeightedLruCache::hitCount)
+                .tag("cache", name)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("quizgen.cache.requests", cache, WeightedLruCache::missCount)
+                .tag("cache", name)
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("quizgen.cache.evictions", cache, WeightedLruCache::evictionCount)
+                .tag("cache", name)
+                .register(registry);
+    }
+
+    // Zero while DynamicCode runs in-process
+    private static void workerCounter(MeterRegistry registry, String name, ToDoubleFunction<WorkerPool> count) {
+        FunctionCounter.builder(name, Executor.class, executor -> {
+            WorkerPool workerPool = Executor.workerPool();
+            return workerPool == null ? 0 : count.applyAsDouble(workerPool);
+        }).register(registry);
+    }
+}
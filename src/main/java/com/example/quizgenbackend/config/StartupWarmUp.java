@@ -0,0 +1,70 @@
+package com.example.quizgenbackend.config;
+
+import com.example.quizgenbackend.generator.QuizArchive;
+import com.example.quizgenbackend.generator.QuizGenerator;
+import com.example.quizgenbackend.generator.QuizTemplate;
+import com.example.quizgenbackend.generator.TemplateParser;
+import com.example.quizgenbackend.generator.VariableContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+// Generates a sample quiz a few times before the application reports ready: the readiness probe only switches to
+// ACCEPTING_TRAFFIC once every ApplicationRunner has returned. That way the first real request does not pay for
+// loading and JIT-compiling the parser, the DynamicCode sandbox, the expression compiler and the DOCX and CSV writers.
+@Component
+public class StartupWarmUp implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(StartupWarmUp.class);
+    private static final String SAMPLE_QUIZ = "warmup/sample-quiz.txt";
+
+    private final ApplicationContext context;
+    private final boolean enabled;
+    private final int iterations;
+    private final boolean exitWhenDone;
+
+    public StartupWarmUp(ApplicationContext context,
+                         @Value("${quizgen.warm-up.enabled:true}") boolean enabled,
+                         @Value("${quizgen.warm-up.iterations:5}") int iterations,
+                         @Value("${quizgen.warm-up.exit:false}") boolean exitWhenDone) {
+        this.context = context;
+        this.enabled = enabled;
+        this.iterations = iterations;
+        this.exitWhenDone = exitWhenDone;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (enabled) {
+            warmUp();
+        }
+        if (exitWhenDone) {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+
+    // A failed warm-up only costs the first requests their speed, so it is reported and startup goes on
+    private void warmUp() {
+        long start = System.nanoTime();
+        try (InputStream sample = new ClassPathResource(SAMPLE_QUIZ).getInputStream()) {
+            QuizTemplate template = TemplateParser.parse(new String(sample.readAllBytes(), StandardCharsets.UTF_8));
+            for (int i = 0; i < iterations; i++) {
+                QuizGenerator.generateQuizFile(template, new VariableContext(new Random(i)));
+                QuizArchive.write(template, new VariableContext(new Random(i)), OutputStream.nullOutputStream());
+            }
+            log.debug("Warm-up: generated {} {} times in {} ms", SAMPLE_QUIZ, iterations, (System.nanoTime() - start) / 1_000_000);
+        } catch (Exception e) {
+            log.warn("Warm-up failed, the first quizzes will be slower", e);
+        }
+    }
+}
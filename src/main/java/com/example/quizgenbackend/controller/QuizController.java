@@ -1,71 +1,302 @@
 package com.example.quizgenbackend.controller;
 
 import com.example.quizgenbackend.QuizOutput;
+import com.example.quizgenbackend.cache.CapturingOutputStream;
+import com.example.quizgenbackend.cache.OutputCache;
+import com.example.quizgenbackend.generator.CompilationBatch;
+import com.example.quizgenbackend.generator.OutputFormat;
+import com.example.quizgenbackend.generator.QuizArchive;
 import com.example.quizgenbackend.generator.QuizGenerator;
+import com.example.quizgenbackend.generator.QuizTemplate;
+import com.example.quizgenbackend.generator.TemplateParser;
+import com.example.quizgenbackend.generator.VariableContext;
+import com.example.quizgenbackend.generator.VariantGenerator;
+import com.example.quizgenbackend.jobs.QuizJob;
+import com.example.quizgenbackend.jobs.QuizJobs;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.zip.ZipEntry;
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.zip.ZipOutputStream;
 
+// The browser only lets the frontend read the response headers listed in exposedHeaders
 @CrossOrigin(origins = {
         "http://localhost:4200",
         "https://web-quiz-gen.vercel.app"
-})
+}, exposedHeaders = {"X-Quiz-Seed", HttpHeaders.ETAG, HttpHeaders.LOCATION})
 @RestController
 @RequestMapping("/quiz")
 public class QuizController {
 
+    // /output and /generate take an optional seed. The same template and seed give the same quiz, so responses to
+    // a seeded request are cached and carry an ETag. Without a seed every request is a new quiz and is neither
+    // cached nor tagged. The seed that was used comes back in X-Quiz-Seed either way.
     @PostMapping("/output")
-    public ResponseEntity<String> outputQuiz(@RequestBody Map<String, String> body) {
+    public ResponseEntity<String> outputQuiz(@RequestBody Map<String, String> body,
+                                             @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         String input = body.get("input");
         if (input == null) return ResponseEntity.badRequest().body("Missing input");
 
-        QuizOutput output = QuizGenerator.generateQuizFile(input);
+        long seed;
+        try {
+            seed = seedOf(body);
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().body("Invalid seed");
+        }
+
+        // Without a seed from the client the request can never repeat, so it is neither cached nor tagged
+        boolean seeded = isSeeded(body);
+        String key = seeded ? OutputCache.key("text", input, seed) : null;
+        String etag = seeded ? OutputCache.etag(key) : null;
+        if (seeded && OutputCache.matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).header("X-Quiz-Seed", String.valueOf(seed)).build();
+        }
+
+        byte[] text = seeded ? OutputCache.CACHE.get(key) : null;
+        if (text == null) {
+            // The preview only shows the text, so no document or CSV is built for it
+            QuizOutput output = QuizGenerator.generateQuizFile(TemplateParser.parseCached(input), new VariableContext(new Random(seed)),
+                    EnumSet.of(OutputFormat.TEXT));
+            text = output.plainText.getBytes(StandardCharsets.UTF_8);
+            if (seeded) {
+                OutputCache.CACHE.put(key, text);
+            }
+        }
+
         return ResponseEntity.ok()
+                .eTag(etag)
+                .header("X-Quiz-Seed", String.valueOf(seed))
                 .contentType(MediaType.TEXT_PLAIN)
-                .body(output.plainText);
+                .body(new String(text, StandardCharsets.UTF_8));
     }
 
     @PostMapping("/generate")
-    public ResponseEntity<byte[]> generateQuiz(@RequestBody Map<String, String> body) {
+    public ResponseEntity<StreamingResponseBody> generateQuiz(@RequestBody Map<String, String> body,
+                                                              @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         String input = body.get("input");
         if (input == null || input.trim().isEmpty()) {
             return ResponseEntity.badRequest().body(null);
         }
 
-        System.out.println(input);
-        QuizOutput output = QuizGenerator.generateQuizFile(input);
+        long seed;
+        try {
+            seed = seedOf(body);
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().body(null);
+        }
 
-        ByteArrayOutputStream zipOutputStream = new ByteArrayOutputStream();
-        try (ZipOutputStream zipOut = new ZipOutputStream(zipOutputStream)) {
-            ZipEntry docxEntry = new ZipEntry("quiz.docx");
-            zipOut.putNextEntry(docxEntry);
-            zipOut.write(output.docxBytes);
-            zipOut.closeEntry();
+        boolean seeded = isSeeded(body);
+        String key = seeded ? OutputCache.key("zip", input, seed) : null;
+        String etag = seeded ? OutputCache.etag(key) : null;
+        if (seeded && OutputCache.matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).header("X-Quiz-Seed", String.valueOf(seed)).build();
+        }
+
+        StreamingResponseBody zip;
+        byte[] cached = seeded ? OutputCache.CACHE.get(key) : null;
+        if (cached != null) {
+            zip = out -> out.write(cached);
+        } else {
+            // Fail on a broken template before the response starts
+            QuizTemplate template = TemplateParser.parseCached(input);
+            zip = out -> {
+                if (!seeded) {
+                    QuizArchive.write(template, new VariableContext(new Random(seed)), out);
+                    return;
+                }
+                CapturingOutputStream capture = new CapturingOutputStream(out, OutputCache.CACHE.maxWeight());
+                QuizArchive.write(template, new VariableContext(new Random(seed)), capture);
+                byte[] archive = capture.captured();
+                if (archive != null) {
+                    OutputCache.CACHE.put(key, archive);
+                }
+            };
+        }
+
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .header("X-Quiz-Seed", String.valueOf(seed))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"quiz_files.zip\"")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(zip);
+    }
+
+    // The seed from the body, or a random one when there is none
+    private static long seedOf(Map<String, String> body) {
+        String seed = body.get("seed");
+        return seed != null ? Long.parseLong(seed.trim()) : ThreadLocalRandom.current().nextLong();
+    }
+
+    // Only a seed the client chose can be asked for again, so only then is the response worth caching
+    private static boolean isSeeded(Map<String, String> body) {
+        return body.get("seed") != null;
+    }
+
+    // Generates count versions of the quiz from one seed: variant-N/quiz.docx and quiz.csv per version and
+    // an answer_key.csv. Without a seed a random one is used; it is sent back in X-Quiz-Seed either way.
+    // Code that fails in the first variant fails the request; in a later one it leaves variant-N/error.txt.
+    @PostMapping("/variants")
+    public ResponseEntity<StreamingResponseBody> generateVariants(@RequestBody Map<String, String> body) {
+        String input = body.get("input");
+        if (input == null || input.trim().isEmpty()) {
+            return ResponseEntity.badRequest().body(null);
+        }
+
+        int count;
+        long seed;
+        try {
+            count = Integer.parseInt(body.getOrDefault("count", "1").trim());
+            seed = seedOf(body);
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().body(null);
+        }
+        if (count < 1 || count > VariantGenerator.maxVariants()) {
+            return ResponseEntity.badRequest().body(null);
+        }
+        // Fail on a broken template before the response starts rather than halfway through the archive
+        TemplateParser.parseCached(input);
+
+        StreamingResponseBody zip = out -> {
+            ZipOutputStream zipOut = new ZipOutputStream(out);
+            String numberFormat = "variant-%0" + String.valueOf(count).length() + "d/";
+            List<String[]> answerKey = new ArrayList<>();
+
+            VariantGenerator.generate(input, count, seed, variant -> {
+                String directory = String.format(numberFormat, variant.number);
+                if (variant.error != null) {
+                    zipOut.putNextEntry(QuizArchive.entry(directory + "error.txt"));
+                    zipOut.write(variant.error.getBytes(StandardCharsets.UTF_8));
+                    zipOut.closeEntry();
+                    return;
+                }
 
-            ZipEntry csvEntry = new ZipEntry("quiz.csv");
-            zipOut.putNextEntry(csvEntry);
-            zipOut.write(output.csvBytes);
+                zipOut.putNextEntry(QuizArchive.entry(directory + "quiz.docx"));
+                zipOut.write(variant.docx);
+                zipOut.closeEntry();
+
+                zipOut.putNextEntry(QuizArchive.entry(directory + "quiz.csv"));
+                zipOut.write(variant.csv);
+                zipOut.closeEntry();
+
+                answerKey.addAll(variant.answerKey);
+            });
+
+            zipOut.putNextEntry(QuizArchive.entry("answer_key.csv"));
+            VariantGenerator.writeAnswerKey(answerKey, zipOut);
             zipOut.closeEntry();
-        } catch (IOException e) {
-            throw new RuntimeException("Error creating zip", e);
+            zipOut.finish();
+        };
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"quiz_variants.zip\"")
+                .header("X-Quiz-Seed", String.valueOf(seed))
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(zip);
+    }
+
+    // Queues the quiz for generation and answers at once with the job to poll. 503 when the queue is full.
+    @PostMapping("/jobs")
+    public ResponseEntity<Map<String, Object>> submitJob(@RequestBody Map<String, String> body) {
+        String input = body.get("input");
+        if (input == null || input.trim().isEmpty()) {
+            return ResponseEntity.badRequest().body(null);
+        }
+
+        QuizTemplate template = TemplateParser.parseCached(input);
+        QuizJob job;
+        try {
+            job = QuizJobs.submit(template);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .body(null);
+        }
+
+        return ResponseEntity.accepted()
+                .location(URI.create("/quiz/jobs/" + job.id()))
+                .body(job.status());
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<Map<String, Object>> jobStatus(@PathVariable String id) {
+        QuizJob job = QuizJobs.get(id);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
         }
+        return ResponseEntity.ok(job.status());
+    }
 
-        byte[] zipBytes = zipOutputStream.toByteArray();
+    // The same ZIP /generate returns, once the job is done; 409 while it is still queued or running
+    @GetMapping("/jobs/{id}/result")
+    public ResponseEntity<byte[]> jobResult(@PathVariable String id) {
+        QuizJob job = QuizJobs.get(id);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (job.state() == QuizJob.State.FAILED) {
+            return ResponseEntity.unprocessableEntity()
+                    .contentType(MediaType.TEXT_PLAIN)
+                    .body(job.error().getBytes(StandardCharsets.UTF_8));
+        }
+        if (job.state() != QuizJob.State.DONE) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
 
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"quiz_files.zip\"")
                 .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(zipBytes);
+                .body(job.result());
+    }
+
+    // A template that cannot be parsed or whose code does not compile is the caller's mistake; say which line is wrong
+    @ExceptionHandler({TemplateParser.TemplateException.class, CompilationBatch.CompilationException.class})
+    public ResponseEntity<String> templateError(IllegalArgumentException e, HttpServletResponse response) {
+        dropDownloadHeaders(response);
+        return ResponseEntity.badRequest()
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(e.getMessage());
+    }
+
+    // Code that runs into a time budget or throws is the template's fault too, though the request itself was fine
+    @ExceptionHandler(CompilationBatch.ExecutionFailedException.class)
+    public ResponseEntity<String> executionError(IllegalStateException e, HttpServletResponse response) {
+        dropDownloadHeaders(response);
+        return ResponseEntity.unprocessableEntity()
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(e.getMessage());
+    }
+
+    // Code that does not compile or fails when it runs is only found once a streamed response has set its download headers, though
+    // before any of the file was sent. Those headers must not go out with the error; the CORS ones must.
+    private static void dropDownloadHeaders(HttpServletResponse response) {
+        if (response.isCommitted() || response.getHeader(HttpHeaders.CONTENT_DISPOSITION) == null) {
+            return;
+        }
+
+        Map<String, List<String>> kept = new LinkedHashMap<>();
+        for (String name : response.getHeaderNames()) {
+            if (name.regionMatches(true, 0, "Access-Control-", 0, 15) || name.equalsIgnoreCase(HttpHeaders.VARY)) {
+                kept.put(name, new ArrayList<>(response.getHeaders(name)));
+            }
+        }
+        response.reset();
+        kept.forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
     }
 }
@@ -0,0 +1,159 @@
+package com.example.quizgenbackend.generator;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// A :Code: section together with the variable values it was read with. Numeric #var# placeholders are
+// turned into references to static fields of a generated QuizBindings class, so every random draw of the
+// same question compiles to the same source and only the field values change between variants.
+public class CodeTemplate {
+    static final String BINDINGS_CLASS = "QuizBindings";
+
+    private final String source;
+    private final String inlinedSource;
+    private final Map<String, Object> bindings;
+
+    private CodeTemplate(String source, String inlinedSource, Map<String, Object> bindings) {
+        this.source = source;
+        this.inlinedSource = inlinedSource;
+        this.bindings = Collections.unmodifiableMap(bindings);
+    }
+
+    // Code that has no placeholders left, such as the generated :Choices: program
+    public static CodeTemplate of(String code) {
+        return new CodeTemplate(code, code, new LinkedHashMap<>());
+    }
+
+    public static CodeTemplate bind(List<String> lines, VariableContext variables) {
+        StringBuilder source = new StringBuilder();
+        StringBuilder inlinedSource = new StringBuilder();
+        Map<String, Object> bindings = new LinkedHashMap<>();
+
+        // Text blocks span lines with their own quoting rules, so those sections are always inlined
+        boolean parameterize = lines.stream().noneMatch(line -> line.contains("\"\"\""));
+        LexState state = new LexState();
+
+        for (String line : lines) {
+            String inlinedLine = QuizGenerator.replaceVariables(line, variables);
+            inlinedSource.append(inlinedLine).append("\n");
+            source.append(parameterize ? bindLine(line, variables, bindings, state) : inlinedLine).append("\n");
+        }
+
+        if (bindings.isEmpty()) {
+            return of(inlinedSource.toString());
+        }
+        return new CodeTemplate(source.toString(), inlinedSource.toString(), bindings);
+    }
+
+    // Source with QuizBindings.<name> references in place of the numeric placeholders
+    public String source() {
+        return source;
+    }
+
+    // Source with every placeholder replaced by its value, as readCodeSection always produced it
+    public String inlinedSource() {
+        return inlinedSource;
+    }
+
+    public Map<String, Object> bindings() {
+        return bindings;
+    }
+
+    @Override
+    public String toString() {
+        return inlinedSource;
+    }
+
+    private static String bindLine(String line, VariableContext variables, Map<String, Object> bindings, LexState state) {
+        StringBuilder out = new StringBuilder(line.length());
+        boolean inString = false;
+        boolean inChar = false;
+        int i = 0;
+
+        while (i < line.length()) {
+            char c = line.charAt(i);
+
+            if (state.inBlockComment) {
+                if (line.startsWith("*/", i)) {
+                    state.inBlockComment = false;
+                    out.append("*/");
+                    i += 2;
+                } else {
+                    out.append(c);
+                    i++;
+                }
+                continue;
+            }
+
+            if (c == '#') {
+                int end = line.indexOf('#', i + 1);
+                if (end == -1) {
+                    out.append(line, i, line.length());
+                    break;
+                }
+
+                String name = line.substring(i + 1, end);
+                Object value = variables.get(name);
+                if (!inChar && isBindable(name, value)) {
+                    bindings.put(name, value);
+                    String reference = BINDINGS_CLASS + "." + name;
+                    out.append(inString ? "\" + " + reference + " + \"" : reference);
+                } else {
+                    out.append(value);
+                }
+                i = end + 1;
+                continue;
+            }
+
+            if (inString || inChar) {
+                if (c == '\\' && i + 1 < line.length()) {
+                    out.append(c).append(line.charAt(i + 1));
+                    i += 2;
+                    continue;
+                }
+                if (inString && c == '"') {
+                    inString = false;
+                } else if (inChar && c == '\'') {
+                    inChar = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '\'') {
+                inChar = true;
+            } else if (line.startsWith("//", i)) {
+                out.append(line, i, line.length());
+                break;
+            } else if (line.startsWith("/*", i)) {
+                state.inBlockComment = true;
+                out.append("/*");
+                i += 2;
+                continue;
+            }
+
+            out.append(c);
+            i++;
+        }
+
+        return out.toString();
+    }
+
+    private static boolean isBindable(String name, Object value) {
+        if (!(value instanceof Integer || value instanceof Double) || name.isEmpty()
+                || !Character.isJavaIdentifierStart(name.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < name.length(); i++) {
+            if (!Character.isJavaIdentifierPart(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Comment state carried from one line of the section to the next
+    private static class LexState {
+        boolean inBlockComment;
+    }
+}
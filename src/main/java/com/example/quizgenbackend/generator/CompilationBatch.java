@@ -0,0 +1,396 @@
+package com.example.quizgenbackend.generator;
+
+import com.example.quizgenbackend.cache.ContentHash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaFileObject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Collects the code of every question in a quiz, compiles all of it with a single javac task and then runs
+// the questions side by side on a shared pool. Every source is placed in a package named after its hash, so the DynamicCode
+// classes of different questions never clash inside the shared task and identical code compiles once.
+public class CompilationBatch {
+    private static final Logger log = LoggerFactory.getLogger(CompilationBatch.class);
+    private static volatile ExecutorService pool;
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    // The type tags the question's execute timer
+    public Entry add(String label, String type, CodeTemplate template) {
+        Entry entry = new Entry(label, type, template);
+        entries.add(entry);
+        return entry;
+    }
+
+    // How many questions run at the same time across all batches; more than the sandbox has slots would
+    // only leave executions queueing in the sandbox, where they can be rejected
+    public static void setParallelism(int parallelism) {
+        ExecutorService previous;
+        synchronized (CompilationBatch.class) {
+            previous = pool;
+            pool = newPool(parallelism);
+        }
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    private static ExecutorService pool() {
+        ExecutorService executorService = pool;
+        if (executorService == null) {
+            synchronized (CompilationBatch.class) {
+                executorService = pool;
+                if (executorService == null) {
+                    executorService = newPool(Executor.sandbox().maxConcurrent());
+                    pool = executorService;
+                }
+            }
+        }
+        return executorService;
+    }
+
+    private static ExecutorService newPool(int parallelism) {
+        return Executors.newFixedThreadPool(parallelism, ThreadFactories.named("question-execution-"));
+    }
+
+    // Compiles every entry, then starts running them side by side and returns without waiting. An entry's
+    // output() blocks until that entry has run, so callers can consume results in order while later
+    // questions are still executing.
+    public void compileAndStart() {
+        compileAll();
+
+        WorkerPool workerPool = Executor.workerPool();
+        if (workerPool != null) {
+            startInWorkers(workerPool);
+            return;
+        }
+
+        for (Entry entry : entries) {
+            if (entry.unit.classBytes == null) {
+                entry.done.complete(null);
+            } else {
+                CompletableFuture.runAsync(() -> execute(entry), pool()).whenComplete((ignored, e) -> entry.finish(e));
+            }
+        }
+    }
+
+    // Runs every entry and waits for all of them
+    public void compileAndExecute() {
+        compileAndStart();
+        for (Entry entry : entries) {
+            entry.await();
+        }
+    }
+
+    // The errors of the entries whose code did not compile. They are all known once compileAndStart returned,
+    // so this never waits for a run.
+    public List<String> compileErrors() {
+        List<String> errors = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.unit != null && entry.unit.classBytes == null) {
+                errors.add(entry.error);
+            }
+        }
+        return errors;
+    }
+
+    // The errors of the runs that produced no output, e.g. because they went over a time budget or threw.
+    // Waits for every run.
+    public List<String> runErrors() {
+        List<String> errors = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.output() == null) {
+                errors.add(entry.error());
+            }
+        }
+        return errors;
+    }
+
+    private static void execute(Entry entry) {
+        long start = System.nanoTime();
+        try {
+            entry.output = Executor.execute(entry.unit.classBytes, entry.unit.packageName,
+                    entry.bound ? entry.template.bindings() : Map.of());
+            if (entry.output == null) {
+                entry.error = entry.label + ": DynamicCode could not be run";
+            }
+        } catch (ExecutionSandbox.ExecutionLimitException e) {
+            entry.error = entry.label + ": DynamicCode " + e.getMessage();
+            log.debug(entry.error);
+        } finally {
+            GeneratorMetrics.recordSince("execute", entry.type, start);
+        }
+    }
+
+    // Splits the compiled questions into one consecutive run per worker JVM, so the workers run in parallel
+    // and the first questions come back while the last ones are still being worked on
+    private void startInWorkers(WorkerPool workerPool) {
+        List<Entry> compiled = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.unit.classBytes != null) {
+                compiled.add(entry);
+            } else {
+                entry.done.complete(null);
+            }
+        }
+        if (compiled.isEmpty()) {
+            return;
+        }
+
+        int chunks = Math.min(workerPool.size(), compiled.size());
+        int chunkSize = (compiled.size() + chunks - 1) / chunks;
+        for (int from = 0; from < compiled.size(); from += chunkSize) {
+            List<Entry> chunk = compiled.subList(from, Math.min(from + chunkSize, compiled.size()));
+            CompletableFuture.runAsync(() -> executeInWorker(workerPool, chunk), pool()).whenComplete((ignored, e) -> {
+                for (Entry entry : chunk) {
+                    entry.finish(e);
+                }
+            });
+        }
+    }
+
+    private static void executeInWorker(WorkerPool workerPool, List<Entry> chunk) {
+        List<WorkerPool.Job> jobs = new ArrayList<>();
+        for (Entry entry : chunk) {
+            jobs.add(new WorkerPool.Job(entry.unit.packageName, entry.unit.classBytes,
+                    entry.bound ? entry.template.bindings() : Map.of(),
+                    Executor.sandbox().wallClockMillis(), Executor.sandbox().cpuTimeMillis()));
+        }
+
+        long start = System.nanoTime();
+        List<WorkerPool.Result> results = workerPool.execute(jobs);
+        GeneratorMetrics.recordSince("execute", "worker-batch", start);
+        for (int i = 0; i < chunk.size(); i++) {
+            Entry entry = chunk.get(i);
+            WorkerPool.Result result = results.get(i);
+            if (result.isOk()) {
+                entry.output = result.output.trim();
+            } else {
+                entry.error = entry.label + ": DynamicCode " + result.output;
+                log.debug(entry.error);
+            }
+        }
+    }
+
+    private void compileAll() {
+        Map<String, Unit> units = new HashMap<>();
+        for (Entry entry : entries) {
+            entry.bound = Executor.parameterizedCode && !entry.template.bindings().isEmpty();
+            if (entry.bound) {
+                String boundKey = sourceKey(boundSource(entry.template));
+                if (Executor.isUnbindable(boundKey)) {
+                    entry.bound = false;
+                } else {
+                    entry.unit = units.computeIfAbsent(boundKey, key -> new Unit(key, entry.template.source(), boundSource(entry.template)));
+                }
+            }
+            if (!entry.bound) {
+                entry.unit = inlinedUnit(entry.template, units);
+            }
+        }
+
+        // Repeated sources skip javac and only pay for defining the classes again
+        List<Unit> pending = new ArrayList<>();
+        for (Unit unit : units.values()) {
+            unit.classBytes = Executor.CLASS_CACHE.get(unit.key);
+            if (unit.classBytes == null) {
+                pending.add(unit);
+            }
+        }
+
+        // javac generates nothing when any unit has errors, so failing units are dropped (or retried with their
+        // inlined source) and the rest compiled again. Every round removes at least one unit, so this terminates.
+        while (!pending.isEmpty()) {
+            DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+            List<Executor.DynamicJavaSourceFile> sourceFiles = new ArrayList<>();
+            for (Unit unit : pending) {
+                sourceFiles.add(unit.sourceFile);
+            }
+
+            Map<String, byte[]> classBytes = Executor.compile(sourceFiles, diagnostics);
+            if (classBytes != null) {
+                for (Unit unit : pending) {
+                    unit.classBytes = unit.classesIn(classBytes);
+                    Executor.CLASS_CACHE.put(unit.key, unit.classBytes);
+                }
+                break;
+            }
+
+            Map<Unit, List<String>> errors = new LinkedHashMap<>();
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                if (diagnostic.getKind() != Diagnostic.Kind.ERROR) {
+                    continue;
+                }
+                for (Unit unit : pending) {
+                    if (unit.sourceFile == diagnostic.getSource()) {
+                        errors.computeIfAbsent(unit, failed -> new ArrayList<>())
+                                .add("line " + unit.codeLine(diagnostic.getLineNumber()) + ": " + diagnostic.getMessage(null));
+                    }
+                }
+            }
+            if (errors.isEmpty()) {
+                for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                    log.warn("javac failed outside the template's code: {}", diagnostic.getMessage(null));
+                }
+                for (Unit unit : pending) {
+                    errors.put(unit, List.of("compilation failed"));
+                }
+            }
+
+            List<Unit> nextRound = new ArrayList<>();
+            for (Unit unit : pending) {
+                if (!errors.containsKey(unit)) {
+                    nextRound.add(unit);
+                }
+            }
+
+            for (Entry entry : entries) {
+                List<String> unitErrors = errors.get(entry.unit);
+                if (unitErrors == null) {
+                    continue;
+                }
+
+                if (entry.bound) {
+                    // Placeholders used where Java needs a constant (case labels, narrowing, literal suffixes)
+                    Executor.markUnbindable(entry.unit.key);
+                    entry.bound = false;
+                    entry.unit = inlinedUnit(entry.template, units);
+                    unitErrors = errors.get(entry.unit);
+                    if (unitErrors == null) {
+                        if (entry.unit.classBytes == null && !nextRound.contains(entry.unit)) {
+                            entry.unit.classBytes = Executor.CLASS_CACHE.get(entry.unit.key);
+                            if (entry.unit.classBytes == null) {
+                                nextRound.add(entry.unit);
+                            }
+                        }
+                        continue;
+                    }
+                }
+
+                entry.error = entry.label + ": " + String.join("; ", unitErrors);
+                log.debug(entry.error);
+            }
+
+            pending = nextRound;
+        }
+    }
+
+    private static String boundSource(CodeTemplate template) {
+        return Executor.wrapInClass(template.source()) + Executor.bindingsClass(template.bindings());
+    }
+
+    private static Unit inlinedUnit(CodeTemplate template, Map<String, Unit> units) {
+        String source = Executor.wrapInClass(template.inlinedSource());
+        return units.computeIfAbsent(sourceKey(source), key -> new Unit(key, template.inlinedSource(), source));
+    }
+
+    private static String sourceKey(String source) {
+        return ContentHash.sha256(Executor.normalizeSource(source));
+    }
+
+    // One question's code as it is handed to javac
+    static class Unit {
+        final String key;
+        final String packageName;
+        final Executor.DynamicJavaSourceFile sourceFile;
+        // Lines javac sees before the first line of the question's own code
+        final int headerLines;
+        Map<String, byte[]> classBytes;
+
+        Unit(String key, String code, String source) {
+            this.key = key;
+            this.packageName = "dyn" + key.substring(0, 20);
+            this.sourceFile = new Executor.DynamicJavaSourceFile(packageName + ".DynamicCode",
+                    "package " + packageName + ";\n" + source);
+            // The package line, plus the class and main declarations when wrapInClass added them
+            this.headerLines = code.contains("class") ? 1 : 3;
+        }
+
+        long codeLine(long sourceLine) {
+            return Math.max(1, sourceLine - headerLines);
+        }
+
+        Map<String, byte[]> classesIn(Map<String, byte[]> classBytes) {
+            Map<String, byte[]> unitClasses = new HashMap<>();
+            for (Map.Entry<String, byte[]> entry : classBytes.entrySet()) {
+                if (entry.getKey().startsWith(packageName + ".")) {
+                    unitClasses.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return Map.copyOf(unitClasses);
+        }
+    }
+
+    // A question's code and, once it ran, its output or the reason it has none. Both accessors wait for the run.
+    public static class Entry {
+        private final String label;
+        private final String type;
+        private final CodeTemplate template;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private Unit unit;
+        private boolean bound;
+        // Written by the execution thread before done completes, read only after it did
+        private String output;
+        private String error;
+
+        Entry(String label, String type, CodeTemplate template) {
+            this.label = label;
+            this.type = type;
+            this.template = template;
+        }
+
+        public String output() {
+            await();
+            return output;
+        }
+
+        public String error() {
+            await();
+            return error;
+        }
+
+        private void finish(Throwable failure) {
+            if (failure != null) {
+                done.completeExceptionally(failure);
+            } else {
+                done.complete(null);
+            }
+        }
+
+        private void await() {
+            try {
+                done.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(label + ": DynamicCode failed", e.getCause());
+            }
+        }
+    }
+
+    // Code in the template that javac rejects: the caller's mistake, like a TemplateException
+    public static class CompilationException extends IllegalArgumentException {
+        public CompilationException(List<String> errors) {
+            super(String.join("\n", errors));
+        }
+    }
+
+    // Code in the template that compiles but fails when it runs, e.g. an endless loop cut off by its budget
+    public static class ExecutionFailedException extends IllegalStateException {
+        public ExecutionFailedException(List<String> errors) {
+            super(String.join("\n", errors));
+        }
+    }
+}
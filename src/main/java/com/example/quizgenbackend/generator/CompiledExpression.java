@@ -0,0 +1,320 @@
+package com.example.quizgenbackend.generator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+// A solution expression parsed once into a tree that can be evaluated for any number of variants.
+// Placeholders like #R1# become slots whose values are passed to evaluate, in the order of variableNames().
+// Supports + - * / % with the usual precedence, unary minus, ^ (right associative, binding tighter than
+// unary minus), parentheses, the constants pi and e and the functions listed below.
+public final class CompiledExpression {
+    private static final Map<String, DoubleUnaryOperator> FUNCTIONS = Map.ofEntries(
+            Map.entry("sqrt", Math::sqrt),
+            Map.entry("cbrt", Math::cbrt),
+            Map.entry("abs", Math::abs),
+            Map.entry("sin", Math::sin),
+            Map.entry("cos", Math::cos),
+            Map.entry("tan", Math::tan),
+            Map.entry("asin", Math::asin),
+            Map.entry("acos", Math::acos),
+            Map.entry("atan", Math::atan),
+            Map.entry("log", Math::log),
+            Map.entry("log10", Math::log10),
+            Map.entry("exp", Math::exp),
+            Map.entry("floor", Math::floor),
+            Map.entry("ceil", Math::ceil),
+            Map.entry("round", value -> (double) Math.round(value)));
+
+    private static final Map<String, DoubleBinaryOperator> BINARY_FUNCTIONS = Map.of(
+            "pow", Math::pow,
+            "min", Math::min,
+            "max", Math::max,
+            "atan2", Math::atan2);
+
+    private static final Map<String, Double> CONSTANTS = Map.of(
+            "pi", Math.PI,
+            "e", Math.E);
+
+    private static final double[] NO_SLOTS = new double[0];
+
+    private final String source;
+    private final Node root;
+    private final List<String> variableNames;
+
+    private CompiledExpression(String source, Node root, List<String> variableNames) {
+        this.source = source;
+        this.root = root;
+        this.variableNames = variableNames;
+    }
+
+    public static CompiledExpression compile(String expression) {
+        Parser parser = new Parser(expression);
+        Node root = parser.parse();
+        return new CompiledExpression(expression, root, List.copyOf(parser.slots.keySet()));
+    }
+
+    // Names of the placeholders in the expression, without the surrounding #
+    public List<String> variableNames() {
+        return variableNames;
+    }
+
+    public double evaluate(double... slots) {
+        if (slots.length < variableNames.size()) {
+            throw new IllegalArgumentException("Expected values for " + variableNames + " in " + source);
+        }
+        return root.evaluate(slots);
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    private interface Node {
+        double evaluate(double[] slots);
+    }
+
+    private record Constant(double value) implements Node {
+        @Override
+        public double evaluate(double[] slots) {
+            return value;
+        }
+    }
+
+    private static class Parser {
+        private final String text;
+        private final Map<String, Integer> slots = new LinkedHashMap<>();
+        private int position;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Node parse() {
+            Node node = expression();
+            skipBlanks();
+            if (position < text.length()) {
+                throw error("Unexpected '" + text.charAt(position) + "'");
+            }
+            return node;
+        }
+
+        private Node expression() {
+            Node node = term();
+            while (true) {
+                if (accept('+')) {
+                    Node right = term();
+                    node = fold(add(node, right), node, right);
+                } else if (accept('-')) {
+                    Node right = term();
+                    node = fold(subtract(node, right), node, right);
+                } else {
+                    return node;
+                }
+            }
+        }
+
+        private Node term() {
+            Node node = unary();
+            while (true) {
+                if (accept('*')) {
+                    Node right = unary();
+                    node = fold(multiply(node, right), node, right);
+                } else if (accept('/')) {
+                    Node right = unary();
+                    node = fold(divide(node, right), node, right);
+                } else if (accept('%')) {
+                    Node right = unary();
+                    node = fold(remainder(node, right), node, right);
+                } else {
+                    return node;
+                }
+            }
+        }
+
+        private Node unary() {
+            if (accept('-')) {
+                Node operand = unary();
+                return fold(slots -> -operand.evaluate(slots), operand);
+            }
+            if (accept('+')) {
+                return unary();
+            }
+            return power();
+        }
+
+        private Node power() {
+            Node base = primary();
+            if (accept('^')) {
+                Node exponent = unary();
+                return fold(slots -> Math.pow(base.evaluate(slots), exponent.evaluate(slots)), base, exponent);
+            }
+            return base;
+        }
+
+        private Node primary() {
+            skipBlanks();
+            if (position >= text.length()) {
+                throw error("Expression ended early");
+            }
+
+            char c = text.charAt(position);
+            if (c == '(') {
+                position++;
+                Node node = expression();
+                expect(')');
+                return node;
+            }
+            if (c == '#') {
+                return variable();
+            }
+            if (Character.isDigit(c) || c == '.') {
+                return number();
+            }
+            if (Character.isLetter(c)) {
+                return identifier();
+            }
+            throw error("Unexpected '" + c + "'");
+        }
+
+        private Node variable() {
+            int end = text.indexOf('#', position + 1);
+            if (end == -1) {
+                throw error("Unclosed placeholder");
+            }
+            String name = text.substring(position + 1, end);
+            position = end + 1;
+
+            int slot = slots.computeIfAbsent(name, added -> slots.size());
+            return slotValues -> slotValues[slot];
+        }
+
+        private Node number() {
+            int start = position;
+            while (position < text.length() && (Character.isDigit(text.charAt(position)) || text.charAt(position) == '.')) {
+                position++;
+            }
+            // Exponent, as in the 1.0E-5 that Double.toString produces for small values
+            if (position < text.length() && (text.charAt(position) == 'e' || text.charAt(position) == 'E')) {
+                int exponent = position + 1;
+                if (exponent < text.length() && (text.charAt(exponent) == '+' || text.charAt(exponent) == '-')) {
+                    exponent++;
+                }
+                if (exponent < text.length() && Character.isDigit(text.charAt(exponent))) {
+                    position = exponent;
+                    while (position < text.length() && Character.isDigit(text.charAt(position))) {
+                        position++;
+                    }
+                }
+            }
+
+            try {
+                return new Constant(Double.parseDouble(text.substring(start, position)));
+            } catch (NumberFormatException e) {
+                position = start;
+                throw error("Malformed number");
+            }
+        }
+
+        private Node identifier() {
+            int start = position;
+            while (position < text.length() && Character.isLetterOrDigit(text.charAt(position))) {
+                position++;
+            }
+            String name = text.substring(start, position).toLowerCase();
+
+            if (!accept('(')) {
+                Double constant = CONSTANTS.get(name);
+                if (constant == null) {
+                    position = start;
+                    throw error("Unknown name '" + name + "'");
+                }
+                return new Constant(constant);
+            }
+
+            List<Node> arguments = new ArrayList<>();
+            if (!accept(')')) {
+                do {
+                    arguments.add(expression());
+                } while (accept(','));
+                expect(')');
+            }
+
+            DoubleUnaryOperator function = FUNCTIONS.get(name);
+            if (function != null && arguments.size() == 1) {
+                Node argument = arguments.get(0);
+                return fold(slots -> function.applyAsDouble(argument.evaluate(slots)), argument);
+            }
+            DoubleBinaryOperator binaryFunction = BINARY_FUNCTIONS.get(name);
+            if (binaryFunction != null && arguments.size() == 2) {
+                Node left = arguments.get(0);
+                Node right = arguments.get(1);
+                return fold(slots -> binaryFunction.applyAsDouble(left.evaluate(slots), right.evaluate(slots)), left, right);
+            }
+
+            position = start;
+            throw error(function != null || binaryFunction != null
+                    ? "Wrong number of arguments for '" + name + "'"
+                    : "Unknown function '" + name + "'");
+        }
+
+        private static Node add(Node left, Node right) {
+            return slots -> left.evaluate(slots) + right.evaluate(slots);
+        }
+
+        private static Node subtract(Node left, Node right) {
+            return slots -> left.evaluate(slots) - right.evaluate(slots);
+        }
+
+        private static Node multiply(Node left, Node right) {
+            return slots -> left.evaluate(slots) * right.evaluate(slots);
+        }
+
+        private static Node divide(Node left, Node right) {
+            return slots -> left.evaluate(slots) / right.evaluate(slots);
+        }
+
+        private static Node remainder(Node left, Node right) {
+            return slots -> left.evaluate(slots) % right.evaluate(slots);
+        }
+
+        // Evaluates the node right away when its operands are constants, so variants only pay for what varies
+        private static Node fold(Node node, Node... operands) {
+            for (Node operand : operands) {
+                if (!(operand instanceof Constant)) {
+                    return node;
+                }
+            }
+            return new Constant(node.evaluate(NO_SLOTS));
+        }
+
+        private boolean accept(char expected) {
+            skipBlanks();
+            if (position < text.length() && text.charAt(position) == expected) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char expected) {
+            if (!accept(expected)) {
+                throw error("Expected '" + expected + "'");
+            }
+        }
+
+        private void skipBlanks() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + (position + 1) + " in: " + text);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.quizgenbackend.generator;
+
+import javax.tools.*;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Fixed set of javac workers that compilations borrow one at a time. Each worker keeps its own
+// StandardJavaFileManager, so the platform class index it builds on first use is reused by every
+// later compilation instead of being rebuilt per question.
+public class CompilerPool {
+    private final int size;
+    private final BlockingQueue<Worker> idleWorkers;
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public CompilerPool(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Compiler pool size must be at least 1");
+        }
+
+        this.size = size;
+        this.idleWorkers = new ArrayBlockingQueue<>(size);
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("No system Java compiler available, a JDK is required to run quiz code");
+        }
+        for (int i = 0; i < size; i++) {
+            idleWorkers.add(new Worker(compiler));
+        }
+    }
+
+    // Compiles a trivial class on every worker so javac's classes are loaded and JIT compiled before real requests
+    public void warmUp() {
+        String warmUpSource = "public class WarmUp {\n" +
+                "    public static void main(String[] args) {\n" +
+                "        System.out.println(String.valueOf(Math.max(args.length, 1)));\n" +
+                "    }\n" +
+                "}\n";
+
+        Worker[] workers = new Worker[size];
+        for (int i = 0; i < size; i++) {
+            workers[i] = borrow();
+        }
+        try {
+            for (Worker worker : workers) {
+                Executor.InMemoryFileManager fileManager = new Executor.InMemoryFileManager(worker.fileManager);
+                JavaFileObject sourceFile = new Executor.DynamicJavaSourceFile("WarmUp", warmUpSource);
+                worker.compiler.getTask(null, fileManager, null, null, null, List.of(sourceFile)).call();
+            }
+        } finally {
+            for (Worker worker : workers) {
+                release(worker);
+            }
+        }
+    }
+
+    public Worker borrow() {
+        long start = System.nanoTime();
+        waiting.incrementAndGet();
+        try {
+            return idleWorkers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a compiler", e);
+        } finally {
+            waiting.decrementAndGet();
+            long waited = System.nanoTime() - start;
+            borrows.incrementAndGet();
+            totalWaitNanos.addAndGet(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+        }
+    }
+
+    public void release(Worker worker) {
+        idleWorkers.add(worker);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Compilations currently waiting for a free worker
+    public int queueDepth() {
+        return waiting.get();
+    }
+
+    public int idleCount() {
+        return idleWorkers.size();
+    }
+
+    public long borrowCount() {
+        return borrows.get();
+    }
+
+    public long totalWaitNanos() {
+        return totalWaitNanos.get();
+    }
+
+    public long maxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    // A compiler with the file manager it reuses across compilations. Not thread-safe, hence the pool.
+    public static class Worker {
+        final JavaCompiler compiler;
+        final StandardJavaFileManager fileManager;
+
+        Worker(JavaCompiler compiler) {
+            this.compiler = compiler;
+            this.fileManager = compiler.getStandardFileManager(null, null, null);
+        }
+    }
+}
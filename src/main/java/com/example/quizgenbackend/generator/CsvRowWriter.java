@@ -0,0 +1,43 @@
+package com.example.quizgenbackend.generator;
+
+import com.opencsv.CSVWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+// Writes each question's rows through CSVWriter as it arrives, followed by the empty row that separates
+// questions, so no more than one question is held at a time. Call finish() once the quiz is done; it flushes
+// but leaves the underlying stream open.
+public class CsvRowWriter implements QuestionRowSink {
+    private static final String[] SEPARATOR = {};
+
+    private final CSVWriter writer;
+
+    public CsvRowWriter(Writer output) {
+        this.writer = new CSVWriter(output);
+    }
+
+    // Writes UTF-8 to the stream
+    public CsvRowWriter(OutputStream output) {
+        this(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void accept(String[][] rows) {
+        for (String[] row : rows) {
+            writer.writeNext(row);
+        }
+        writer.writeNext(SEPARATOR);
+    }
+
+    // CSVWriter swallows write errors, so they only surface here
+    public void finish() throws IOException {
+        writer.flush();
+        if (writer.checkError()) {
+            throw new IOException("Error writing CSV", writer.getException());
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.quizgenbackend.generator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipOutputStream;
+
+// Writes a DOCX straight to a stream while the quiz is rendered, the way SXSSF does for spreadsheets: the package
+// parts go out first and document.xml follows run by run, so no document model is ever held in memory. It covers
+// what the quizzes use, a single paragraph of plain or bold runs with carriage returns and line breaks.
+final class DocxWriter {
+    private static final String CONTENT_TYPES = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+            + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+            + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+            + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+            + "<Override PartName=\"/docProps/core.xml\" ContentType=\"application/vnd.openxmlformats-package.core-properties+xml\"/>"
+            + "<Override PartName=\"/word/document.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.wordprocessingml.document.main+xml\"/>"
+            + "</Types>";
+    private static final String RELATIONSHIPS = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+            + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+            + "<Relationship Id=\"rId1\" Target=\"word/document.xml\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\"/>"
+            + "<Relationship Id=\"rId2\" Target=\"docProps/core.xml\" Type=\"http://schemas.openxmlformats.org/package/2006/relationships/metadata/core-properties\"/>"
+            + "</Relationships>";
+    // No creation date, so the document only depends on the template and the seed
+    private static final String CORE_PROPERTIES = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+            + "<cp:coreProperties xmlns:cp=\"http://schemas.openxmlformats.org/package/2006/metadata/core-properties\"/>";
+    private static final String DOCUMENT_START = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+            + "<w:document xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\"><w:body><w:p>";
+    private static final String DOCUMENT_END = "</w:p></w:body></w:document>";
+
+    private final OutputStream out;
+    private ZipOutputStream zip;
+    private Writer xml;
+
+    // Nothing is written until the first run, so a quiz that fails before its first render step, as one whose code
+    // does not compile does, leaves the stream untouched
+    DocxWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    private void start() throws IOException {
+        zip = new ZipOutputStream(out);
+        xml = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8));
+
+        part("[Content_Types].xml", CONTENT_TYPES);
+        part("_rels/.rels", RELATIONSHIPS);
+        part("docProps/core.xml", CORE_PROPERTIES);
+
+        zip.putNextEntry(QuizArchive.entry("word/document.xml"));
+        xml.write(DOCUMENT_START);
+    }
+
+    private void part(String name, String content) throws IOException {
+        zip.putNextEntry(QuizArchive.entry(name));
+        xml.write(content);
+        xml.flush();
+        zip.closeEntry();
+    }
+
+    // One run: an optional carriage return, the text, another optional carriage return, then the line breaks
+    void run(String text, boolean bold, boolean carriageReturnBefore, boolean carriageReturnAfter, int breaks) {
+        try {
+            if (xml == null) {
+                start();
+            }
+            xml.write(bold ? "<w:r><w:rPr><w:b/></w:rPr>" : "<w:r>");
+            if (carriageReturnBefore) {
+                xml.write("<w:cr/>");
+            }
+            writeText(text);
+            if (carriageReturnAfter) {
+                xml.write("<w:cr/>");
+            }
+            for (int i = 0; i < breaks; i++) {
+                xml.write("<w:br/>");
+            }
+            xml.write("</w:r>");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing DOCX", e);
+        }
+    }
+
+    // Leading or trailing whitespace needs xml:space="preserve", or Word drops it
+    private void writeText(String text) throws IOException {
+        boolean preserve = !text.isEmpty()
+                && (Character.isWhitespace(text.charAt(0)) || Character.isWhitespace(text.charAt(text.length() - 1)));
+        xml.write(preserve ? "<w:t xml:space=\"preserve\">" : "<w:t>");
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '&') {
+                xml.write("&amp;");
+            } else if (c == '<') {
+                xml.write("&lt;");
+            } else if (c == '>') {
+                xml.write("&gt;");
+            } else if (c == '\r') {
+                // A bare carriage return would be read back as a line feed
+                xml.write("&#13;");
+            } else if (Character.isSurrogate(c)) {
+                // Only a high and low surrogate together are a character; either half alone is dropped
+                if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    xml.write(c);
+                    xml.write(text.charAt(++i));
+                }
+            } else if ((c >= 0x20 && c != '\uFFFE' && c != '\uFFFF') || c == '\t' || c == '\n') {
+                // Other control characters and U+FFFE and U+FFFF cannot appear in XML 1.0 at all
+                xml.write(c);
+            }
+        }
+        xml.write("</w:t>");
+    }
+
+    // Ends document.xml and the package, leaving the stream open
+    void finish() throws IOException {
+        if (xml == null) {
+            start();
+        }
+        xml.write(DOCUMENT_END);
+        xml.flush();
+        zip.closeEntry();
+        zip.finish();
+    }
+}
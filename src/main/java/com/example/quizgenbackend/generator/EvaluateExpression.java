@@ -1,6 +1,8 @@
 package com.example.quizgenbackend.generator;
 
-import java.util.Stack;
+import com.example.quizgenbackend.cache.WeightedLruCache;
+
+import java.util.List;
 
 public class EvaluateExpression {
     public static void main(String[] args) {
@@ -19,108 +21,38 @@ public class EvaluateExpression {
         }
     }
 
+    // Compiled solution expressions by their text, so every variant of a quiz parses its formulas once
+    private static final WeightedLruCache<String, CompiledExpression> COMPILED = new WeightedLruCache<>(4096, expression -> 1);
+
     /** Evaluate an expression */
     public static double evaluateExpression(String expression) {
-        // Create operandStack to store operands
-        Stack<Double> operandStack = new Stack<>();
-
-        // Create operatorStack to store operators
-        Stack<Character> operatorStack = new Stack<>();
-
-        // Insert blanks around (, ), +, -, /, and *
-        expression = insertBlanks(expression);
-
-        // Extract operands and operators
-        String[] tokens = expression.split(" ");
-
-        // Phase 1: Scan tokens
-        for (String token: tokens) {
-            if (token.length() == 0) // Blank space
-                continue; // Back to the while loop to extract the next token
-            else if (token.charAt(0) == '+' || token.charAt(0) == '-') {
-                // Process all +, -, *, / in the top of the operator stack
-                while (!operatorStack.isEmpty() &&
-                        (operatorStack.peek() == '+' ||
-                                operatorStack.peek() == '-' ||
-                                operatorStack.peek() == '*' ||
-                                operatorStack.peek() == '%' ||
-                                operatorStack.peek() == '/')) {
-                    processAnOperator(operandStack, operatorStack);
-                }
-
-                // Push the + or - operator into the operator stack
-                operatorStack.push(token.charAt(0));
-            }
-            else if (token.charAt(0) == '*' || token.charAt(0) == '/' || token.charAt(0) == '%') {
-                // Process all *, / in the top of the operator stack
-                while (!operatorStack.isEmpty() &&
-                        (operatorStack.peek() == '*' ||
-                                operatorStack.peek() == '%' ||
-                                operatorStack.peek() == '/')) {
-                    processAnOperator(operandStack, operatorStack);
-                }
-
-                // Push the * or / operator into the operator stack
-                operatorStack.push(token.charAt(0));
-            }
-            else if (token.trim().charAt(0) == '(') {
-                operatorStack.push('('); // Push '(' to stack
-            }
-            else if (token.trim().charAt(0) == ')') {
-                // Process all the operators in the stack until seeing '('
-                while (operatorStack.peek() != '(') {
-                    processAnOperator(operandStack, operatorStack);
-                }
+        return compile(expression).evaluate();
+    }
 
-                operatorStack.pop(); // Pop the '(' symbol from the stack
-            }
-            else { // An operand scanned
-                // Push an operand to the stack
-                operandStack.push(Double.valueOf(token));
+    /** Evaluate an expression whose #name# placeholders take their values from the variables */
+    public static double evaluateExpression(String expression, VariableContext variables) {
+        CompiledExpression compiled = compile(expression);
+        List<String> names = compiled.variableNames();
+        double[] slots = new double[names.size()];
+
+        for (int i = 0; i < slots.length; i++) {
+            try {
+                slots[i] = variables.number(names.get(i));
+            } catch (NumberFormatException e) {
+                // A set value that is not a plain number, e.g. "2*3": it only makes sense pasted into the text
+                return evaluateExpression(QuizGenerator.replaceVariables(expression, variables));
             }
         }
 
-        // Phase 2: process all the remaining operators in the stack
-        while (!operatorStack.isEmpty()) {
-            processAnOperator(operandStack, operatorStack);
-        }
-
-        // Return the result
-        return operandStack.pop();
+        return compiled.evaluate(slots);
     }
 
-    /** Process one operator: Take an operator from operatorStack and
-     *  apply it on the operands in the operandStack */
-    public static void processAnOperator(
-            Stack<Double> operandStack, Stack<Character> operatorStack) {
-        char op = operatorStack.pop();
-        double op1 = operandStack.pop();
-        double op2 = operandStack.pop();
-        if (op == '+')
-            operandStack.push(op2 + op1);
-        else if (op == '-')
-            operandStack.push(op2 - op1);
-        else if (op == '*')
-            operandStack.push(op2 * op1);
-        else if (op == '/')
-            operandStack.push(op2 / op1);
-        else if (op == '%')
-            operandStack.push(op2 % op1);
-    }
-
-    public static String insertBlanks(String s) {
-        String result = "";
-
-        for (int i = 0; i < s.length(); i++) {
-            if (s.charAt(i) == '(' || s.charAt(i) == ')' ||
-                    s.charAt(i) == '+' || s.charAt(i) == '-' ||
-                    s.charAt(i) == '%' ||
-                    s.charAt(i) == '*' || s.charAt(i) == '/')
-                result += " " + s.charAt(i) + " ";
-            else
-                result += s.charAt(i);
+    public static CompiledExpression compile(String expression) {
+        CompiledExpression compiled = COMPILED.get(expression);
+        if (compiled == null) {
+            compiled = CompiledExpression.compile(expression);
+            COMPILED.put(expression, compiled);
         }
-
-        return result;
+        return compiled;
     }
 }
@@ -0,0 +1,218 @@
+package com.example.quizgenbackend.generator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Runs DynamicCode with a bounded number of concurrent executions and a wall-clock and CPU-time budget per run.
+// Every run gets a fresh thread rather than one from a ThreadPoolExecutor: a run that ignores interrupts
+// would otherwise keep a pool thread forever, and a pool cannot replace a thread it still considers busy.
+public class ExecutionSandbox {
+    private static final Logger log = LoggerFactory.getLogger(ExecutionSandbox.class);
+    private static final long CANCEL_GRACE_MILLIS = 200;
+    private static final long MAX_POLL_MILLIS = 50;
+
+    // The quizgen.executor.* defaults, also used when nothing configured the sandbox
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    public static final long DEFAULT_QUEUE_TIMEOUT_MILLIS = 10000;
+    public static final long DEFAULT_WALL_CLOCK_MILLIS = 5000;
+    public static final long DEFAULT_CPU_TIME_MILLIS = 4000;
+
+    private final int maxConcurrent;
+    private final int queueCapacity;
+    private final long queueTimeoutMillis;
+    private final long wallClockMillis;
+    private final long cpuTimeMillis;
+    private final Semaphore slots;
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong threadCount = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+
+    public ExecutionSandbox(int maxConcurrent, int queueCapacity, long queueTimeoutMillis, long wallClockMillis, long cpuTimeMillis) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("At least one concurrent execution is required");
+        }
+
+        this.maxConcurrent = maxConcurrent;
+        this.queueCapacity = queueCapacity;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.wallClockMillis = wallClockMillis;
+        this.cpuTimeMillis = cpuTimeMillis;
+        this.slots = new Semaphore(maxConcurrent, true);
+    }
+
+    // Runs the task on its own thread and returns once it finished, or throws once it ran out of budget
+    public void run(Runnable task) {
+        acquireSlot();
+        try {
+            Thread thread = new Thread(task, "dynamic-code-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setUncaughtExceptionHandler((failed, e) -> {
+                // ThreadDeath is how stop() ends a runaway execution, nothing to report
+                if (!(e instanceof ThreadDeath)) {
+                    log.warn("{} failed", failed.getName(), e);
+                }
+            });
+            thread.start();
+
+            String overBudget = awaitWithinBudget(thread);
+            if (overBudget == null) {
+                completed.incrementAndGet();
+                return;
+            }
+
+            timedOut.incrementAndGet();
+            if (stop(thread)) {
+                cancelled.incrementAndGet();
+            } else {
+                // Still running and nothing left to end it with: keep it from competing with healthy runs
+                thread.setPriority(Thread.MIN_PRIORITY);
+                abandoned.incrementAndGet();
+            }
+            throw new ExecutionLimitException(overBudget);
+        } finally {
+            active.decrementAndGet();
+            slots.release();
+        }
+    }
+
+    private void acquireSlot() {
+        if (!slots.tryAcquire()) {
+            if (waiting.incrementAndGet() > queueCapacity) {
+                waiting.decrementAndGet();
+                rejected.incrementAndGet();
+                throw new ExecutionLimitException("rejected, " + queueCapacity + " executions are already waiting");
+            }
+
+            try {
+                if (!slots.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    rejected.incrementAndGet();
+                    throw new ExecutionLimitException("rejected, no execution slot became free within " + queueTimeoutMillis + " ms");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                rejected.incrementAndGet();
+                throw new ExecutionLimitException("interrupted while waiting for an execution slot");
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+        active.incrementAndGet();
+    }
+
+    // Waits for the thread to finish and returns null, or returns which budget it exceeded
+    private String awaitWithinBudget(Thread thread) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(wallClockMillis);
+        long cpuBudgetNanos = TimeUnit.MILLISECONDS.toNanos(cpuTimeMillis);
+        boolean measureCpu = threadMXBean.isThreadCpuTimeSupported() && threadMXBean.isThreadCpuTimeEnabled();
+
+        // Short polls first so quick executions are not held back, longer ones once a run takes a while
+        long pollMillis = 1;
+        while (true) {
+            try {
+                thread.join(pollMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "interrupted while waiting for the execution";
+            }
+
+            if (!thread.isAlive()) {
+                return null;
+            }
+            if (System.nanoTime() - deadline > 0) {
+                return "exceeded the wall-clock budget of " + wallClockMillis + " ms";
+            }
+            if (measureCpu && threadMXBean.getThreadCpuTime(thread.getId()) > cpuBudgetNanos) {
+                return "exceeded the CPU-time budget of " + cpuTimeMillis + " ms";
+            }
+            pollMillis = Math.min(pollMillis * 2, MAX_POLL_MILLIS);
+        }
+    }
+
+    // Interrupts the thread, then stops it outright if it ignores that. Returns whether it ended.
+    @SuppressWarnings({"deprecation", "removal"})
+    private static boolean stop(Thread thread) {
+        thread.interrupt();
+        if (joinQuietly(thread)) {
+            return true;
+        }
+
+        try {
+            thread.stop();
+        } catch (UnsupportedOperationException e) {
+            // Thread.stop is gone on Java 20+, the thread can only be abandoned there
+            return false;
+        }
+        return joinQuietly(thread);
+    }
+
+    private static boolean joinQuietly(Thread thread) {
+        try {
+            thread.join(CANCEL_GRACE_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return !thread.isAlive();
+    }
+
+    public long wallClockMillis() {
+        return wallClockMillis;
+    }
+
+    public long cpuTimeMillis() {
+        return cpuTimeMillis;
+    }
+
+    public int maxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int activeCount() {
+        return active.get();
+    }
+
+    public int queueDepth() {
+        return waiting.get();
+    }
+
+    public long completedCount() {
+        return completed.get();
+    }
+
+    public long timeoutCount() {
+        return timedOut.get();
+    }
+
+    public long rejectionCount() {
+        return rejected.get();
+    }
+
+    public long cancellationCount() {
+        return cancelled.get();
+    }
+
+    // Runs that outlived their budget and could not be stopped
+    public long abandonedCount() {
+        return abandoned.get();
+    }
+
+    // Thrown when an execution was rejected or ran out of budget
+    public static class ExecutionLimitException extends RuntimeException {
+        public ExecutionLimitException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.quizgenbackend.generator;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+// Main class of the worker JVMs used when quizgen.executor.mode=worker-pool. Connects back to the service on
+// the loopback port it was started with, reads batches of compiled DynamicCode from that socket, runs them one
+// after another and writes what each printed back to it. Executed code can reach the process's stdout through
+// FileDescriptor.out or threads without a capture target, so the protocol never runs over it.
+// The worker is started with only this class and OutputCapture on its class path, so it may use nothing
+// else from the application apart from compile-time constants.
+public class ExecutionWorker {
+    static final int STATUS_OK = 0;
+    static final int STATUS_FAILED = 1;
+    static final int STATUS_TIMED_OUT = 2;
+
+    static final byte INT_BINDING = 'I';
+    static final byte DOUBLE_BINDING = 'D';
+
+    // The most a job may print; the service rejects any longer result as a corrupt frame
+    static final int MAX_RESULT_BYTES = 4 * 1024 * 1024;
+
+    private static final long CANCEL_GRACE_MILLIS = 200;
+    private static final long MAX_POLL_MILLIS = 50;
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    // args: the service's loopback port and the token that identifies this worker to it
+    public static void main(String[] args) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out.writeUTF(args[1]);
+        out.flush();
+        OutputCapture.install();
+
+        while (true) {
+            int jobCount;
+            try {
+                jobCount = in.readInt();
+            } catch (EOFException e) {
+                return; // The service closed the connection
+            }
+
+            boolean runawayThreads = false;
+            out.writeInt(jobCount);
+            for (int i = 0; i < jobCount; i++) {
+                runawayThreads |= runJob(in, out);
+            }
+            out.flush();
+
+            // A run that ignored its interrupt is still spinning here; exit so the pool starts a clean JVM
+            if (runawayThreads) {
+                Runtime.getRuntime().halt(3);
+            }
+        }
+    }
+
+    // Runs one job and writes its result, returning true when its thread could not be ended
+    private static boolean runJob(DataInputStream in, DataOutputStream out) throws IOException {
+        String packageName = in.readUTF();
+        long wallClockMillis = in.readLong();
+        long cpuTimeMillis = in.readLong();
+
+        int classCount = in.readInt();
+        Map<String, byte[]> classBytes = new HashMap<>();
+        for (int i = 0; i < classCount; i++) {
+            String className = in.readUTF();
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            classBytes.put(className, bytes);
+        }
+
+        int bindingCount = in.readInt();
+        Map<String, Object> bindings = new HashMap<>();
+        for (int i = 0; i < bindingCount; i++) {
+            String name = in.readUTF();
+            byte type = in.readByte();
+            bindings.put(name, type == INT_BINDING ? (Object) in.readInt() : (Object) in.readDouble());
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            ClassLoader classLoader = new WorkerClassLoader(classBytes);
+            Class<?> dynamicClass = classLoader.loadClass(packageName + ".DynamicCode");
+            if (!bindings.isEmpty()) {
+                Class<?> bindingsClass = classLoader.loadClass(packageName + "." + CodeTemplate.BINDINGS_CLASS);
+                for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+                    Field field = bindingsClass.getDeclaredField(binding.getKey());
+                    field.setAccessible(true);
+                    field.set(null, binding.getValue());
+                }
+            }
+
+            Thread thread = new Thread(() -> {
+                OutputCapture.begin(output);
+                try {
+                    dynamicClass.getMethod("main", String[].class).invoke(null, (Object) new String[]{});
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    OutputCapture.end();
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+
+            String overBudget = awaitWithinBudget(thread, wallClockMillis, cpuTimeMillis);
+            if (overBudget != null) {
+                thread.interrupt();
+                thread.join(CANCEL_GRACE_MILLIS);
+                writeResult(out, STATUS_TIMED_OUT, overBudget);
+                return thread.isAlive();
+            }
+
+            if (output.size() > MAX_RESULT_BYTES) {
+                writeResult(out, STATUS_FAILED, "printed more than " + MAX_RESULT_BYTES + " bytes");
+            } else {
+                writeResult(out, STATUS_OK, output.toString());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            writeResult(out, STATUS_FAILED, "could not be run: " + e);
+        }
+        return false;
+    }
+
+    // The same budgets as ExecutionSandbox: waits for the thread and returns null, or which budget it exceeded
+    private static String awaitWithinBudget(Thread thread, long wallClockMillis, long cpuTimeMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + wallClockMillis * 1_000_000;
+        long cpuBudgetNanos = cpuTimeMillis * 1_000_000;
+        boolean measureCpu = THREAD_MX_BEAN.isThreadCpuTimeSupported() && THREAD_MX_BEAN.isThreadCpuTimeEnabled();
+
+        long pollMillis = 1;
+        while (true) {
+            thread.join(pollMillis);
+            if (!thread.isAlive()) {
+                return null;
+            }
+            if (System.nanoTime() - deadline > 0) {
+                return "exceeded the wall-clock budget of " + wallClockMillis + " ms";
+            }
+            if (measureCpu && THREAD_MX_BEAN.getThreadCpuTime(thread.getId()) > cpuBudgetNanos) {
+                return "exceeded the CPU-time budget of " + cpuTimeMillis + " ms";
+            }
+            pollMillis = Math.min(pollMillis * 2, MAX_POLL_MILLIS);
+        }
+    }
+
+    private static void writeResult(DataOutputStream out, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(status);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // Defines the classes of a single job, a new one per job so static state never leaks between runs
+    static class WorkerClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classBytes;
+
+        WorkerClassLoader(Map<String, byte[]> classBytes) {
+            super(ExecutionWorker.class.getClassLoader());
+            this.classBytes = classBytes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = classBytes.get(name);
+            if (bytes == null) {
+                return super.findClass(name);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -1,16 +1,108 @@
 package com.example.quizgenbackend.generator;
 
+import com.example.quizgenbackend.cache.WeightedLruCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import javax.tools.*;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.PrintStream;
+import java.io.OutputStream;
+import java.lang.ref.Cleaner;
+import java.lang.reflect.Field;
 import java.net.URI;
-import java.net.URL;
-import java.net.URLClassLoader;
-import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Executor {
+    private static final Logger log = LoggerFactory.getLogger(Executor.class);
+    // Compiled bytecode by hash of the normalized source, weighted by the total size of the class files
+    public static final WeightedLruCache<String, Map<String, byte[]>> CLASS_CACHE =
+            new WeightedLruCache<>(32L * 1024 * 1024, Executor::classBytesWeight);
+
+    // Sources whose parameterized form did not compile, so they go straight to the inlined source next time
+    private static final WeightedLruCache<String, Boolean> UNBINDABLE_SOURCES = new WeightedLruCache<>(1024, failed -> 1);
+
+    private static volatile CompilerPool compilerPool;
+    private static volatile ExecutionSandbox sandbox;
+
+    // Set when quizgen.executor.mode=worker-pool; DynamicCode then runs in separate JVMs
+    private static volatile WorkerPool workerPool;
+
+    private static final Cleaner LOADER_CLEANER = Cleaner.create();
+    private static final AtomicLong definedClasses = new AtomicLong();
+    private static final AtomicLong loadedClasses = new AtomicLong();
+
+    // When false, :Code: sections are always compiled with their variable values spliced into the source
+    static volatile boolean parameterizedCode = true;
+
+    public static void setParameterizedCode(boolean enabled) {
+        parameterizedCode = enabled;
+    }
+
+    public static void setCompilerPool(CompilerPool pool) {
+        compilerPool = pool;
+    }
+
+    public static void setSandbox(ExecutionSandbox executionSandbox) {
+        sandbox = executionSandbox;
+    }
+
+    public static void setWorkerPool(WorkerPool pool) {
+        workerPool = pool;
+    }
+
+    public static WorkerPool workerPool() {
+        return workerPool;
+    }
+
+    // Falls back to one worker per core when nothing was configured, e.g. outside the Spring context
+    public static CompilerPool compilerPool() {
+        CompilerPool pool = compilerPool;
+        if (pool == null) {
+            synchronized (Executor.class) {
+                pool = compilerPool;
+                if (pool == null) {
+                    pool = new CompilerPool(Runtime.getRuntime().availableProcessors());
+                    compilerPool = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    // Falls back to one execution per core with the quizgen.executor.* defaults when nothing was configured
+    public static ExecutionSandbox sandbox() {
+        ExecutionSandbox executionSandbox = sandbox;
+        if (executionSandbox == null) {
+            synchronized (Executor.class) {
+                executionSandbox = sandbox;
+                if (executionSandbox == null) {
+                    executionSandbox = new ExecutionSandbox(Runtime.getRuntime().availableProcessors(),
+                            ExecutionSandbox.DEFAULT_QUEUE_CAPACITY, ExecutionSandbox.DEFAULT_QUEUE_TIMEOUT_MILLIS,
+                            ExecutionSandbox.DEFAULT_WALL_CLOCK_MILLIS, ExecutionSandbox.DEFAULT_CPU_TIME_MILLIS);
+                    sandbox = executionSandbox;
+                }
+            }
+        }
+        return executionSandbox;
+    }
+
     public static String compileAndExecute(String code) {
+        return compileAndExecute(CodeTemplate.of(code));
+    }
+
+    // Compiles the template once per question shape and runs it with this variant's variable values
+    public static String compileAndExecute(CodeTemplate template) {
+        CompilationBatch batch = new CompilationBatch();
+        CompilationBatch.Entry entry = batch.add("DynamicCode", "code", template);
+        batch.compileAndExecute();
+        return entry.output();
+    }
+
+    static String wrapInClass(String code) {
         if (!code.contains("class")) {
             code = "public class DynamicCode {\n" +
                     "    public static void main(String[] args) {\n" +
@@ -18,67 +110,122 @@ public class Executor {
                     "    }\n" +
                     "}\n";
         }
+        return code;
+    }
 
+    static String bindingsClass(Map<String, Object> bindings) {
+        StringBuilder code = new StringBuilder("\nclass " + CodeTemplate.BINDINGS_CLASS + " {\n");
+        for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+            String type = binding.getValue() instanceof Integer ? "int" : "double";
+            code.append("    static ").append(type).append(" ").append(binding.getKey()).append(";\n");
+        }
+        return code.append("}\n").toString();
+    }
 
+    static boolean isUnbindable(String sourceKey) {
+        return UNBINDABLE_SOURCES.get(sourceKey) != null;
+    }
 
-        // Prepare the compiler
-        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
-        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
-
-        // Prepare the source file
-        JavaFileObject sourceFile = new DynamicJavaSourceFile("DynamicCode", code);
+    static void markUnbindable(String sourceKey) {
+        UNBINDABLE_SOURCES.put(sourceKey, Boolean.TRUE);
+    }
 
-        // redirect standard output to capture the output
+    // Runs DynamicCode from the given package and returns what it printed, or null if it could not be run.
+    // Throws ExecutionLimitException when the run was rejected or exceeded its time budget.
+    static String execute(Map<String, byte[]> classBytes, String packageName, Map<String, Object> bindings) {
+        // Output is captured per execution thread, so System.out is never swapped while other executions run
+        OutputCapture.install();
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        PrintStream printStream = new PrintStream(outputStream);
-        PrintStream originalOut = System.out;
-
-        // set the new output
-        System.setOut(printStream);
-
-        // Compile the source file
-        Iterable<? extends JavaFileObject> compilationUnits = Arrays.asList(sourceFile);
-        JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, null, null, compilationUnits);
-        boolean success = task.call();
-
-
-        // Check for compilation errors
-        if (!success) {
-            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
-                System.err.println(diagnostic.getMessage(null));
-            }
-            return null;
-        }
 
         // Load and execute the compiled class
         try {
-            URLClassLoader classLoader = new URLClassLoader(new URL[]{new File(".").toURI().toURL()});
-            Class<?> dynamicClass = classLoader.loadClass("DynamicCode");
+            // Each invocation gets its own loader so concurrent compilations never see each other's classes
+            ClassLoader classLoader = new InMemoryClassLoader(classBytes, Executor.class.getClassLoader());
+            Class<?> dynamicClass = classLoader.loadClass(packageName + ".DynamicCode");
+
+            // Static fields live per class loader, so these values are only visible to this execution
+            if (!bindings.isEmpty()) {
+                Class<?> bindingsClass = classLoader.loadClass(packageName + "." + CodeTemplate.BINDINGS_CLASS);
+                for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+                    Field field = bindingsClass.getDeclaredField(binding.getKey());
+                    field.setAccessible(true);
+                    field.set(null, binding.getValue());
+                }
+            }
 
-            // Run the main method in a separate thread
-            Thread thread = new Thread(() -> {
+            // Run the main method in a separate thread, within the sandbox's budgets
+            sandbox().run(() -> {
+                OutputCapture.begin(outputStream);
                 try {
                     dynamicClass.getMethod("main", String[].class).invoke(null, (Object) new String[]{});
                 } catch (Exception e) {
-                    e.printStackTrace();
+                    // A run stopped by the sandbox has already been reported as over budget
+                    if (!(e.getCause() instanceof ThreadDeath)) {
+                        // Ended first, or the log line would become part of what the code printed
+                        OutputCapture.end();
+                        log.debug("DynamicCode threw", e.getCause() != null ? e.getCause() : e);
+                    }
+                } finally {
+                    OutputCapture.end();
                 }
             });
-            thread.start();
-            thread.join(); // Wait for the thread to finish
 
             // Capture output
-            printStream.flush(); // Ensure all output is written to the stream
-            String result = outputStream.toString().trim(); // Capture output
-            outputStream.close(); // Close the output stream
-            System.setOut(originalOut);
-            return result;
+            return outputStream.toString().trim();
+        } catch (ExecutionSandbox.ExecutionLimitException e) {
+            throw e;
         } catch (Exception e) {
-            e.printStackTrace();
+            log.warn("Could not run DynamicCode", e);
             return null;
         }
     }
 
+    // Compiles the sources in one javac task on a pooled worker, returning the bytecode by binary class name or null on errors
+    static Map<String, byte[]> compile(List<? extends JavaFileObject> sourceFiles, DiagnosticCollector<JavaFileObject> diagnostics) {
+        // Borrow a warm compiler, waiting if every worker is busy
+        CompilerPool pool = compilerPool();
+        CompilerPool.Worker worker = pool.borrow();
+        long start = System.nanoTime();
+        InMemoryFileManager fileManager;
+        boolean success;
+
+        try {
+            // Keep the generated bytecode in memory instead of writing .class files to the working directory
+            fileManager = new InMemoryFileManager(worker.fileManager);
+
+            // Compile the source files
+            JavaCompiler.CompilationTask task = worker.compiler.getTask(null, fileManager, diagnostics, null, null, sourceFiles);
+            success = task.call();
+        } finally {
+            pool.release(worker);
+            GeneratorMetrics.recordSince("compile", GeneratorMetrics.QUIZ, start);
+        }
+
+        // Check for compilation errors
+        if (!success) {
+            return null;
+        }
+
+        return fileManager.getClassBytes();
+    }
+
+    // Line endings and trailing whitespace never change the compiled class, so they are left out of the cache key
+    static String normalizeSource(String code) {
+        StringBuilder normalized = new StringBuilder(code.length());
+        for (String line : code.split("\\r?\\n|\\r")) {
+            normalized.append(line.stripTrailing()).append('\n');
+        }
+        return normalized.toString().strip();
+    }
+
+    private static long classBytesWeight(Map<String, byte[]> classBytes) {
+        long weight = 0;
+        for (byte[] bytes : classBytes.values()) {
+            weight += bytes.length;
+        }
+        return weight;
+    }
+
     // Represents a Java source file in memory
     static class DynamicJavaSourceFile extends SimpleJavaFileObject {
         private final String code;
@@ -93,4 +240,82 @@ public class Executor {
             return code;
         }
     }
-}
\ No newline at end of file
+
+    // Represents a compiled class file in memory
+    static class InMemoryClassFile extends SimpleJavaFileObject {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        InMemoryClassFile(String className) {
+            super(URI.create("bytes:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return bytes;
+        }
+
+        byte[] getBytes() {
+            return bytes.toByteArray();
+        }
+    }
+
+    // Hands javac in-memory class files for its output and remembers them by binary class name
+    static class InMemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        private final Map<String, InMemoryClassFile> classFiles = new HashMap<>();
+
+        InMemoryFileManager(StandardJavaFileManager fileManager) {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+            InMemoryClassFile classFile = new InMemoryClassFile(className);
+            classFiles.put(className, classFile);
+            return classFile;
+        }
+
+        Map<String, byte[]> getClassBytes() {
+            Map<String, byte[]> classBytes = new HashMap<>();
+            for (Map.Entry<String, InMemoryClassFile> entry : classFiles.entrySet()) {
+                classBytes.put(entry.getKey(), entry.getValue().getBytes());
+            }
+            return classBytes;
+        }
+    }
+
+    // DynamicCode classes defined so far, and how many of them are still loaded
+    public static long definedClassCount() {
+        return definedClasses.get();
+    }
+
+    public static long loadedClassCount() {
+        return loadedClasses.get();
+    }
+
+    // Defines classes straight from the bytecode produced by a single compilation
+    static class InMemoryClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classBytes;
+        private final AtomicInteger defined = new AtomicInteger();
+
+        InMemoryClassLoader(Map<String, byte[]> classBytes, ClassLoader parent) {
+            super(parent);
+            this.classBytes = classBytes;
+            // The classes are unloaded together with their loader; the action must not refer to the loader itself
+            AtomicInteger definedByThis = defined;
+            LOADER_CLEANER.register(this, () -> loadedClasses.addAndGet(-definedByThis.get()));
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = classBytes.get(name);
+            if (bytes == null) {
+                return super.findClass(name);
+            }
+            Class<?> defined = defineClass(name, bytes, 0, bytes.length);
+            this.defined.incrementAndGet();
+            definedClasses.incrementAndGet();
+            loadedClasses.incrementAndGet();
+            return defined;
+        }
+    }
+}
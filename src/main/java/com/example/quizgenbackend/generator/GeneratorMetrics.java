@@ -0,0 +1,47 @@
+package com.example.quizgenbackend.generator;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Timers for the stages of a generation, in Micrometer's global registry, which Spring Boot publishes under
+// /actuator/prometheus. One timer, quizgen.stage, tagged with the stage and the kind of question it belongs to:
+// parse, variables (all binding and substitution), compile (one javac task), docx and zip are per quiz, type=quiz.
+// execute is per question run (MC or SA, code for a lone snippet, worker-batch for a whole worker JVM batch).
+// render, csv and evaluate are per question (MC, SA, expression, or text for a :Text: section); render leaves
+// out both the wait for the question's code and the time the CSV rows took.
+public final class GeneratorMetrics {
+    public static final String STAGE_TIMER = "quizgen.stage";
+    static final String QUIZ = "quiz";
+    static final String EXPRESSION = "expression";
+
+    private static final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    private GeneratorMetrics() {
+    }
+
+    public static Timer timer(String stage, String type) {
+        return timers.computeIfAbsent(stage + '|' + type, key -> Timer.builder(STAGE_TIMER)
+                .description("Time spent in one stage of quiz generation")
+                .tag("stage", stage)
+                .tag("type", type)
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry));
+    }
+
+    static void record(String stage, String type, long nanos) {
+        timer(stage, type).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    static void recordSince(String stage, String type, long startNanos) {
+        record(stage, type, System.nanoTime() - startNanos);
+    }
+
+    // The tag for a question of the given QuestionType: line; executed questions are MC or SA
+    static String questionType(String questionType) {
+        return questionType.equalsIgnoreCase("MC") ? "MC" : "SA";
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.quizgenbackend.generator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// The <b>, &nbsp;, &gt; and &lt; markup of question text, solutions and choices. A line becomes one run per
+// part, cut before every <b> and after every </b> exactly where line.split("(?=<b>)|(?<=</b>)") cut it, but
+// found in one scan for '<' instead of running a lookbehind regex compiled anew for every line.
+final class MarkupTokenizer {
+    // Removed literally from :Text: runs, as it always was
+    private static final String TAG_PATTERN_TEXT = "<\\/?[a-zA-Z][a-zA-Z0-9]*\\b[^>]*>";
+
+    private MarkupTokenizer() {
+    }
+
+    static List<String> split(String line) {
+        List<String> parts = new ArrayList<>(4);
+        int start = 0;
+        int length = line.length();
+
+        for (int open = line.indexOf('<'); open != -1; open = line.indexOf('<', open + 1)) {
+            if (open > start && line.startsWith("<b>", open)) {
+                parts.add(line.substring(start, open));
+                start = open;
+            } else if (line.startsWith("</b>", open) && open + 4 < length) {
+                parts.add(line.substring(start, open + 4));
+                start = open + 4;
+            }
+        }
+
+        // split drops the empty part after a final </b>, but keeps a whole empty line
+        parts.add(line.substring(start));
+        return parts;
+    }
+
+    static boolean isBold(String part) {
+        return part.startsWith("<b>") || part.endsWith("<b>");
+    }
+
+    static String stripBold(String part) {
+        return part.replace("<b>", "").replace("</b>", "");
+    }
+
+    // What a :Text: part shows once &nbsp; was already replaced: the bold tags gone and &gt; and &lt; decoded.
+    // Parts without any markup, by far the most common, are returned as they are.
+    static String textRun(String part, boolean bold) {
+        if (part.indexOf('<') == -1 && part.indexOf('&') == -1) {
+            return part;
+        }
+        if (bold) {
+            part = stripBold(part);
+        }
+        return part.replace(TAG_PATTERN_TEXT, "").replace("&gt;", ">").replace("&lt;", "<").replace("</b>", "");
+    }
+}
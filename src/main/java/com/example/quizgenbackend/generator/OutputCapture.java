@@ -0,0 +1,60 @@
+package com.example.quizgenbackend.generator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+// Installed once as System.out. Bytes written by a thread that is running DynamicCode go to that execution's
+// buffer, everything else goes to the original standard output. The target is inherited by threads the
+// executed code starts itself, so their output is captured as well.
+public class OutputCapture extends OutputStream {
+    private static final InheritableThreadLocal<OutputStream> TARGET = new InheritableThreadLocal<>();
+
+    private final PrintStream original;
+
+    private OutputCapture(PrintStream original) {
+        this.original = original;
+    }
+
+    public static synchronized void install() {
+        if (!(System.out instanceof CapturingPrintStream)) {
+            System.setOut(new CapturingPrintStream(new OutputCapture(System.out)));
+        }
+    }
+
+    // Sends everything the current thread (and threads it starts) prints to the given stream
+    public static void begin(OutputStream target) {
+        TARGET.set(target);
+    }
+
+    public static void end() {
+        TARGET.remove();
+    }
+
+    private OutputStream target() {
+        OutputStream target = TARGET.get();
+        return target != null ? target : original;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        target().write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        target().write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        target().flush();
+    }
+
+    // Marker type so install() can tell whether the router is already in place
+    private static class CapturingPrintStream extends PrintStream {
+        CapturingPrintStream(OutputCapture capture) {
+            super(capture, true);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.quizgenbackend.generator;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+// What a generation is for. Only the renderers of the requested formats run, so a text preview builds no
+// document and no CSV rows. ZIP is the DOCX and CSV pair of /quiz/generate.
+public enum OutputFormat {
+    TEXT, DOCX, CSV, ZIP;
+
+    public static final Set<OutputFormat> ALL = Collections.unmodifiableSet(EnumSet.of(TEXT, DOCX, CSV));
+
+    // The formats that are actually rendered, with ZIP standing for its two files
+    static EnumSet<OutputFormat> rendered(Set<OutputFormat> requested) {
+        if (requested.isEmpty()) {
+            throw new IllegalArgumentException("No output format requested");
+        }
+        EnumSet<OutputFormat> rendered = EnumSet.copyOf(requested);
+        if (rendered.remove(ZIP)) {
+            rendered.add(DOCX);
+            rendered.add(CSV);
+        }
+        return rendered;
+    }
+}
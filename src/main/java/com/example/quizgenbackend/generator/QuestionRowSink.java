@@ -0,0 +1,7 @@
+package com.example.quizgenbackend.generator;
+
+// Receives the CSV rows of each question as soon as the question has been rendered, in question order
+@FunctionalInterface
+public interface QuestionRowSink {
+    void accept(String[][] rows);
+}
@@ -0,0 +1,89 @@
+package com.example.quizgenbackend.generator;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Writes one generation of a quiz as a ZIP holding quiz.docx and quiz.csv. The document goes first, run by run
+// while the quiz is rendered. A ZIP entry has to be finished before the next begins, so the CSV rows are spooled
+// to a temporary file meanwhile and copied in afterwards; neither file is held in memory. Nothing reaches out
+// before the document's first run, so a quiz whose code does not compile leaves out untouched.
+public class QuizArchive {
+    // The earliest time a ZIP can hold. Set as a local time, so it does not move with the server's time zone.
+    private static final LocalDateTime ENTRY_TIME = LocalDateTime.of(1980, 1, 1, 0, 0);
+
+    public static void write(QuizTemplate template, VariableContext variables, OutputStream out) throws IOException {
+        write(template, variables, out, rows -> { });
+    }
+
+    // questionDone sees the CSV rows of every question right after they were written
+    public static void write(QuizTemplate template, VariableContext variables, OutputStream out, QuestionRowSink questionDone) throws IOException {
+        Path spool = Files.createTempFile("quiz-", ".csv");
+        try {
+            ZipOutputStream zipOut = new ZipOutputStream(out);
+            try (OutputStream spoolOut = Files.newOutputStream(spool)) {
+                CsvRowWriter csv = new CsvRowWriter(spoolOut);
+                QuizGenerator.generateQuiz(template, variables, EnumSet.of(OutputFormat.ZIP), new EntryOutputStream(zipOut, "quiz.docx"), rows -> {
+                    csv.accept(rows);
+                    questionDone.accept(rows);
+                });
+                csv.finish();
+            }
+            zipOut.closeEntry();
+
+            long start = System.nanoTime();
+            zipOut.putNextEntry(entry("quiz.csv"));
+            Files.copy(spool, zipOut);
+            zipOut.closeEntry();
+            zipOut.finish();
+            GeneratorMetrics.recordSince("zip", GeneratorMetrics.QUIZ, start);
+        } finally {
+            Files.deleteIfExists(spool);
+        }
+    }
+
+    // Every entry carries the same time, so the same template and seed give the same bytes whenever they are built
+    public static ZipEntry entry(String name) {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setTimeLocal(ENTRY_TIME);
+        return entry;
+    }
+
+    // Starts its ZIP entry with the first byte written to it
+    private static class EntryOutputStream extends FilterOutputStream {
+        private final ZipOutputStream zipOut;
+        private final String name;
+        private boolean started;
+
+        EntryOutputStream(ZipOutputStream zipOut, String name) {
+            super(zipOut);
+            this.zipOut = zipOut;
+            this.name = name;
+        }
+
+        private void start() throws IOException {
+            if (!started) {
+                zipOut.putNextEntry(entry(name));
+                started = true;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            start();
+            zipOut.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            start();
+            zipOut.write(b, off, len);
+        }
+    }
+}
@@ -1,20 +1,22 @@
 package com.example.quizgenbackend.generator;
 
 import com.example.quizgenbackend.QuizOutput;
-import com.opencsv.CSVWriter;
-import org.apache.poi.xwpf.usermodel.XWPFDocument;
-import org.apache.poi.xwpf.usermodel.XWPFParagraph;
-import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class QuizGenerator {
+    private static final Logger log = LoggerFactory.getLogger(QuizGenerator.class);
+
     static final String QUESTION_PREFIX = "Question #";
     static final String QUESTION_TYPE_PREFIX = "QuestionType:";
     static final String CODE_SECTION = ":Code:";
@@ -27,31 +29,40 @@ public class QuizGenerator {
     static final String SOLUTION_TYPE_PREFIX = "SolutionType:";
     static final String UNIT_PREFIX = "Unit:";
     static final String TITLE_PREFIX = "Title:";
-    static Map<String, Object> variables = new HashMap<>();
+    private static final Pattern NUMBER_VALUE = Pattern.compile("\\[(\\d+)]");
+    private static final Pattern BOOLEAN_VALUE = Pattern.compile("\\[(true|false)]");
+    private static final Pattern CUSTOM_VALUE = Pattern.compile("\\[(.*?)]");
+    private static final AtomicLong choicesFastPath = new AtomicLong();
 
     public static String formatToHtml(String input) {
         if (input == null || input.isEmpty()) {
             return "";
         }
         
-        input = input.replace(" ", "&nbsp;");
-        input = input.replace("\n", "<br>");
-        return input;
+        StringBuilder html = new StringBuilder(input.length() + 32);
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == ' ') {
+                html.append("&nbsp;");
+            } else if (c == '\n') {
+                html.append("<br>");
+            } else {
+                html.append(c);
+            }
+        }
+        return html.toString();
     }
 
     // Generates a CSV file for questions
     public static String writeToCsv(List<String[][]> questions) {
         StringWriter output = new StringWriter();
-        CSVWriter writer = new CSVWriter(output);
+        CsvRowWriter writer = new CsvRowWriter(output);
 
         try {
-            for (String[][] arr : questions) {
-                for (String[] data : arr) {
-                    writer.writeNext(data);
-                }
-                writer.writeNext(new String[]{});
+            for (String[][] question : questions) {
+                writer.accept(question);
             }
-            writer.close();
+            writer.finish();
         } catch (IOException e) {
             throw new RuntimeException("Error generating CSV", e);
         }
@@ -59,25 +70,18 @@ public class QuizGenerator {
         return output.toString();
     }
 
-
     // Replaces variable symbols with the generated values (#R1# -> 2)
-    public static String replaceVariables(String line) {
+    public static String replaceVariables(String line, VariableContext variables) {
         int hash1 = line.indexOf("#");
         int hash2 = line.indexOf("#", hash1 + 1);
 
         while (hash1 != -1) {
             if (hash2 == -1) {
-                System.out.println("Isolated hashtag in line: " + line);
-                continue;
+                log.debug("Isolated hashtag in line: {}", line);
+                break;
             }
             String findVar = line.substring(hash1 + 1, hash2);
-            Object var = variables.get(findVar);
-
-            if (var == null) {
-                throw new IllegalArgumentException(findVar + " is not a defined variable");
-            }
-
-            line = line.replace("#" + findVar + "#", var.toString());
+            line = line.replace("#" + findVar + "#", variables.text(findVar));
 
             hash1 = line.indexOf("#");
             hash2 = line.indexOf("#", hash1 + 1);
@@ -87,128 +91,160 @@ public class QuizGenerator {
     }
 
     public static QuizOutput generateQuizFile(String input) {
-        List<String[][]> allQuestions = new ArrayList<>();
+        return generateQuizFile(input, new VariableContext());
+    }
 
-        try (Scanner file = new Scanner(input);
-             XWPFDocument document = new XWPFDocument();
-             ByteArrayOutputStream docxOutput = new ByteArrayOutputStream()) {
+    public static QuizOutput generateQuizFile(String input, VariableContext variables) {
+        return generateQuizFile(TemplateParser.parseCached(input), variables);
+    }
 
-            XWPFParagraph paragraph = document.createParagraph();
-            StringBuilder plainText = new StringBuilder();
+    public static QuizOutput generateQuizFile(QuizTemplate template, VariableContext variables) {
+        return generateQuizFile(template, variables, OutputFormat.ALL);
+    }
 
-            AtomicInteger selectedIndex = new AtomicInteger(-1);
-            Boolean linkedIndices = false;
-            String questionNumber = "";
-            String executionCode = "";
-            String questionType = "";
-            String csvQuestionText = "";
-            String title = "";
+    // Fields of formats that were not requested are left null
+    public static QuizOutput generateQuizFile(QuizTemplate template, VariableContext variables, Set<OutputFormat> formats) {
+        EnumSet<OutputFormat> rendered = OutputFormat.rendered(formats);
+        ByteArrayOutputStream docxOutput = rendered.contains(OutputFormat.DOCX) ? new ByteArrayOutputStream() : null;
+        ByteArrayOutputStream csvOutput = rendered.contains(OutputFormat.CSV) ? new ByteArrayOutputStream() : null;
+        CsvRowWriter csv = csvOutput != null ? new CsvRowWriter(csvOutput) : null;
 
-            boolean mustExecute = false;
+        try {
+            String plainText = generateQuiz(template, variables, rendered, docxOutput, csv);
+            if (csv != null) {
+                csv.finish();
+            }
+            return new QuizOutput(plainText, docxOutput != null ? docxOutput.toByteArray() : null,
+                    csvOutput != null ? csvOutput.toByteArray() : null);
 
-            while (file.hasNext()) {
-                String nextLine = file.nextLine();
-                if (nextLine.isEmpty() || nextLine.contains("##")) continue;
+        } catch (IOException e) {
+            throw new RuntimeException("Error generating files", e);
+        }
+    }
 
-                if (nextLine.contains(":Linked:")) {
-                    linkedIndices = true;
-                }
+    public static String generateQuiz(String input, OutputStream docx, QuestionRowSink csvRows) throws IOException {
+        return generateQuiz(TemplateParser.parseCached(input), new VariableContext(), OutputFormat.ALL, docx, csvRows);
+    }
 
-                if (nextLine.contains(QUESTION_PREFIX)) {
-                    int hashIndex = nextLine.indexOf("#");
-                    int colonIndex = nextLine.indexOf(":");
-                    questionNumber = nextLine.substring(hashIndex + 1, colonIndex);
-                    executionCode = "";
-                    mustExecute = false;
-                    linkedIndices = false;
-                } else if (nextLine.contains(TITLE_PREFIX)) {
-                    int colonIndex = nextLine.indexOf(":");
-                    title = nextLine.substring(colonIndex + 1).trim();
-                    XWPFRun run = paragraph.createRun();
-                    run.setText("Title: " + title);
-                    run.addBreak();
-                }
+    // Runs the template for callers that stream the files out themselves. Neither file is kept: the DOCX is
+    // written to docx as the quiz is rendered, and each question's rows go to csvRows as soon as that question is
+    // rendered. Only the requested formats are rendered, docx and csvRows are needed exactly when theirs is among
+    // them, and the plain text is returned when TEXT is.
+    public static String generateQuiz(QuizTemplate template, VariableContext variables, Set<OutputFormat> formats, OutputStream docx, QuestionRowSink csvRows) throws IOException {
+        EnumSet<OutputFormat> rendered = OutputFormat.rendered(formats);
+        if (rendered.contains(OutputFormat.DOCX) != (docx != null)) {
+            throw new IllegalArgumentException("The DOCX needs a stream exactly when DOCX output is requested");
+        }
+        if (rendered.contains(OutputFormat.CSV) != (csvRows != null)) {
+            throw new IllegalArgumentException("CSV rows need a sink exactly when CSV output is requested");
+        }
 
-                if (nextLine.startsWith("#")) {
-                    createVariables(nextLine, linkedIndices, selectedIndex);
-                } else if (nextLine.equals(CODE_SECTION)) {
-                    mustExecute = true;
-                    executionCode = readCodeSection(file);
-                } else if (nextLine.equals(CHOICES_PREFIX)) {
-                    mustExecute = true;
-                    Map<String, Integer> choiceToPoints = getChoicesFromChoicesSection(file);
-                    StringBuilder code = new StringBuilder();
-                    code.append("public class DynamicCode {\n")
-                            .append("    public static void main(String[] args) {\n")
-                            .append("        String result = \"\";\n\n");
-
-                    code.append("        String[] choices = new String[] {\n");
-                    for (String choice : choiceToPoints.keySet()) {
-                        code.append("            \"").append(choice).append("\",\n");
-                    }
-                    code.append("        };\n\n");
-                    code.append("        System.out.println(\"Choices: \" + choices.length);\n")
-                            .append("        for (String choice: choices) {\n")
-                            .append("            System.out.println(choice);\n")
-                            .append("        }\n\n");
-
-                    code.append("        String[] points = new String[] {\n");
-                    for (Integer point : choiceToPoints.values()) {
-                        code.append("            \"").append(point).append("\",\n");
+        // Left null when their format was not requested, which the render steps check before writing
+        DocxWriter document = docx != null ? new DocxWriter(docx) : null;
+        StringBuilder plainText = rendered.contains(OutputFormat.TEXT) ? new StringBuilder() : null;
+
+        AtomicInteger selectedIndex = new AtomicInteger(-1);
+        boolean linkedIndices = false;
+        String questionNumber = "";
+        CodeTemplate executionCode = null;
+        Map<String, Integer> choiceToPoints = null;
+        String questionType = "";
+        String csvQuestionText = "";
+        String title = "";
+
+        // Code only runs once the whole template has been read, so every question compiles in a single javac
+        // task. Everything that writes output is queued meanwhile to keep the document in template order.
+        // The questions then run side by side, and the steps render in order once all of them are done.
+        CompilationBatch batch = new CompilationBatch();
+        List<Runnable> renderSteps = new ArrayList<>();
+
+        long variablesStart = System.nanoTime();
+        for (QuizTemplate.Statement statement : template.statements()) {
+            if (statement instanceof QuizTemplate.Linked) {
+                linkedIndices = true;
+            } else if (statement instanceof QuizTemplate.QuestionStart questionStart) {
+                questionNumber = questionStart.number();
+                executionCode = null;
+                choiceToPoints = null;
+                linkedIndices = false;
+            } else if (statement instanceof QuizTemplate.Title titleStatement) {
+                title = titleStatement.text();
+                String titleText = title;
+                if (document != null) {
+                    renderSteps.add(() -> document.run("Title: " + titleText, false, false, false, 1));
+                }
+            } else if (statement instanceof QuizTemplate.CodeSection codeSection) {
+                executionCode = CodeTemplate.bind(codeSection.lines(), variables);
+                choiceToPoints = null;
+            } else if (statement instanceof QuizTemplate.ChoicesSection choicesSection) {
+                choiceToPoints = getChoices(choicesSection, variables);
+                executionCode = choicesProgram(choiceToPoints);
+            } else if (statement instanceof QuizTemplate.TextSection textSection) {
+                List<String> textLines = new ArrayList<>();
+                StringBuilder questionText = csvRows != null ? new StringBuilder() : null;
+                for (String textLine : textSection.lines()) {
+                    String replaced = replaceVariables(textLine, variables);
+                    textLines.add(replaced);
+                    if (questionText != null) {
+                        questionText.append(replaced).append("\n");
                     }
-                    code.append("        };\n\n");
-
-                    code.append("        System.out.println(\"Points: \");\n")
-                            .append("        for (String point: points) {\n")
-                            .append("            System.out.println(point);\n")
-                            .append("        }\n\n")
-                            .append("        System.out.println(result);\n")
-                            .append("    }\n")
-                            .append("}\n");
-
-                    executionCode = String.valueOf(code);
-                } else if (nextLine.equals(TEXT_SECTION)) {
-                    csvQuestionText = readTextSection(file, paragraph, plainText, questionNumber);
-                } else if (nextLine.contains(SOLUTION_PREFIX)) {
-                    processSolution(file, nextLine, paragraph, plainText, mustExecute, executionCode, questionType, csvQuestionText, allQuestions, title);
-                } else if (nextLine.contains(QUESTION_TYPE_PREFIX)) {
-                    questionType = nextLine.substring(nextLine.indexOf(":") + 1).trim();
                 }
-            }
-
-            // Write DOCX to memory
-            document.write(docxOutput);
+                csvQuestionText = questionText != null ? questionText.toString() : "";
 
-            System.out.println("Generated Text:" + plainText.toString());
-
-            // Generate CSV in memory
-            String csvContent = writeToCsv(allQuestions);
-            byte[] csvBytes = csvContent.getBytes(StandardCharsets.UTF_8);
+                if (document != null || plainText != null) {
+                    String textQuestionNumber = questionNumber;
+                    renderSteps.add(() -> renderTextSection(textLines, document, plainText, textQuestionNumber));
+                }
+            } else if (statement instanceof QuizTemplate.ExecutedSolution) {
+                renderSteps.add(processExecutedSolution(document, plainText, executionCode, choiceToPoints, questionType, csvQuestionText, csvRows, title, questionNumber, batch));
+            } else if (statement instanceof QuizTemplate.EvaluatedSolution solution) {
+                renderSteps.add(processEvaluatedSolution(solution, variables, document, plainText, csvQuestionText, csvRows, title));
+            } else if (statement instanceof QuizTemplate.QuestionType type) {
+                questionType = type.type();
+            } else {
+                createVariables(statement, linkedIndices, selectedIndex, variables);
+            }
+        }
+        GeneratorMetrics.recordSince("variables", GeneratorMetrics.QUIZ, variablesStart);
+
+        batch.compileAndStart();
+        // Code that does not compile or fails when it runs fails the quiz before the first render step, while
+        // nothing of it has been written yet and the caller can still answer with an error instead of a truncated
+        // file. Every run is bounded by the sandbox's budgets, so waiting for all of them here always ends.
+        List<String> compileErrors = batch.compileErrors();
+        if (!compileErrors.isEmpty()) {
+            throw new CompilationBatch.CompilationException(compileErrors);
+        }
+        List<String> runErrors = batch.runErrors();
+        if (!runErrors.isEmpty()) {
+            throw new CompilationBatch.ExecutionFailedException(runErrors);
+        }
+        for (Runnable renderStep : renderSteps) {
+            renderStep.run();
+        }
 
-            return new QuizOutput(plainText.toString(), docxOutput.toByteArray(), csvBytes);
+        if (document != null) {
+            long docxStart = System.nanoTime();
+            document.finish();
+            GeneratorMetrics.recordSince("docx", GeneratorMetrics.QUIZ, docxStart);
+        }
 
-        } catch (IOException e) {
-            throw new RuntimeException("Error generating files", e);
+        if (plainText == null) {
+            return null;
         }
-    }
+        log.debug("Generated text:\n{}", plainText);
 
+        return plainText.toString();
+    }
 
-    private static void createVariables(String nextLine, Boolean linkedIndices, AtomicInteger selectedIndex) {
-        Random rand = new Random();
-        String variableName = nextLine.substring(1, 3);
-        int colonIndex = nextLine.indexOf(":");
-        String sub = nextLine.substring(colonIndex + 1);
 
-        if (sub.contains("{")) {
-            ArrayList<String> setValues = new ArrayList<>(Arrays.asList(sub.substring(2, sub.length() - 1).split(",")));
-            variables.put(variableName, setValues);
-        } else if (sub.contains("from")) {
-            int hashMark = sub.indexOf("#");
-            int hashMark2 = sub.indexOf("#", hashMark + 1);
-            String setNum = sub.substring(hashMark + 1, hashMark2);
+    private static void createVariables(QuizTemplate.Statement definition, boolean linkedIndices, AtomicInteger selectedIndex, VariableContext variables) {
+        Random rand = variables.random();
 
-            @SuppressWarnings("unchecked")
-            ArrayList<String> setOptions = (ArrayList<String>) variables.get(setNum);
+        if (definition instanceof QuizTemplate.SetVariable set) {
+            variables.putSet(set.name(), set.values());
+        } else if (definition instanceof QuizTemplate.PickVariable pick) {
+            List<String> setOptions = variables.set(pick.setName());
             int index = rand.nextInt(setOptions.size());
 
             if (linkedIndices) {
@@ -220,154 +256,114 @@ public class QuizGenerator {
             }
 
             String pickedValue = setOptions.get(index);
-            variables.put(variableName, pickedValue);
-
-        } else if (sub.contains("#")) {
-            String[] variableInformation = sub.trim().split(",");
-            String varName = variableInformation[0].trim();
-            String method = variableInformation[1].trim();
-            String value = variableInformation[2].trim();
-
-
-            int hashMark = sub.indexOf("#");
-            int hashMark2 = sub.indexOf("#", hashMark + 1);
-            String var = sub.substring(hashMark + 1, hashMark2);
-            Object referenceVariable = variables.get(var);
-
-            if (method.equalsIgnoreCase("add")) {
-                variables.put(variableName, (int) referenceVariable + Integer.parseInt(value));
-            }
-
-        } else {
-            String[] variableInformation = sub.trim().split(",");
-            String variableType = variableInformation[0].trim();
-            String generationType = variableInformation[1].trim();
-
-            if (variableType.equals("int") && generationType.equals("random")) {
-                int min = Integer.parseInt(variableInformation[2].trim());
-                int max = Integer.parseInt(variableInformation[3].trim());
-                int generated = rand.nextInt(max + 1 - min) + min;
-                variables.put(variableName, generated);
-            } else if (variableType.equals("double") && generationType.equals("random")) {
-                int min = Integer.parseInt(variableInformation[2].trim());
-                int max = Integer.parseInt(variableInformation[3].trim());
-                double generated = rand.nextInt(max + 1 - min) + min + (rand.nextInt(9) + 1) / 10.0;
-                variables.put(variableName, generated);
-            }
+            variables.putText(pick.name(), pickedValue);
+
+        } else if (definition instanceof QuizTemplate.AddVariable add) {
+            variables.putInt(add.name(), variables.intValue(add.reference()) + add.amount());
+        } else if (definition instanceof QuizTemplate.RandomInt random) {
+            int generated = rand.nextInt(random.max() + 1 - random.min()) + random.min();
+            variables.putInt(random.name(), generated);
+        } else if (definition instanceof QuizTemplate.RandomDouble random) {
+            double generated = rand.nextInt(random.max() + 1 - random.min()) + random.min() + (rand.nextInt(9) + 1) / 10.0;
+            variables.putDouble(random.name(), generated);
         }
     }
 
-    public static Map<String, Integer> getChoicesFromChoicesSection(Scanner file) {
+    public static Map<String, Integer> getChoices(QuizTemplate.ChoicesSection section, VariableContext variables) {
         Map<String, Integer> choicesMap = new LinkedHashMap<>(); // LinkedHashmap to preserve question order
-
-        while (file.hasNext()) {
-            String textLine = file.nextLine().trim();
-            if (textLine.equals(END_CHOICES_SECTION)) {
-                break;
-            }
-
-            int hashIndex = textLine.indexOf(",");
-            if (hashIndex > 0) {
-                try {
-                    int points = Integer.parseInt(textLine.substring(0, hashIndex).trim());
-                    String choiceText = textLine.substring(hashIndex + 1).replaceFirst("^,+", "");
-                    choiceText = replaceVariables(choiceText);
-                    choicesMap.put(choiceText.trim(), points);
-                } catch (NumberFormatException e) {
-                    System.err.println("Skipping invalid entry: " + textLine);
-                }
-            }
+        for (QuizTemplate.Choice choice : section.choices()) {
+            choicesMap.put(replaceVariables(choice.text(), variables).trim(), choice.points());
         }
-
         return choicesMap;
     }
 
-    private static String readCodeSection(Scanner file) {
-        StringBuilder executionCode = new StringBuilder();
-        while (file.hasNext()) {
-            String textLine = file.nextLine();
-            if (textLine.equals(END_CODE_SECTION)) {
-                break;
-            }
-            executionCode.append(replaceVariables(textLine)).append("\n");
-        }
-        return executionCode.toString();
-    }
+    // The program that prints a :Choices: section, used when the choices cannot be taken over as they are
+    private static CodeTemplate choicesProgram(Map<String, Integer> choiceToPoints) {
+        StringBuilder code = new StringBuilder();
+        code.append("public class DynamicCode {\n")
+                .append("    public static void main(String[] args) {\n")
+                .append("        String result = \"\";\n\n");
 
-    private static String readTextSection(Scanner file, XWPFParagraph paragraph, StringBuilder plainText, String questionNumber) {
-        System.out.println("Reading text section");
-        boolean setQuestionText = false;
-        String csvQuestionText = "";
+        code.append("        String[] choices = new String[] {\n");
+        for (String choice : choiceToPoints.keySet()) {
+            code.append("            \"").append(choice).append("\",\n");
+        }
+        code.append("        };\n\n");
+        code.append("        System.out.println(\"Choices: \" + choices.length);\n")
+                .append("        for (String choice: choices) {\n")
+                .append("            System.out.println(choice);\n")
+                .append("        }\n\n");
+
+        code.append("        String[] points = new String[] {\n");
+        for (Integer point : choiceToPoints.values()) {
+            code.append("            \"").append(point).append("\",\n");
+        }
+        code.append("        };\n\n");
 
-        while (file.hasNext()) {
-            String textLine = file.nextLine();
-            if (textLine.equals(END_TEXT_SECTION)) {
-                break;
-            }
+        code.append("        System.out.println(\"Points: \");\n")
+                .append("        for (String point: points) {\n")
+                .append("            System.out.println(point);\n")
+                .append("        }\n\n")
+                .append("        System.out.println(result);\n")
+                .append("    }\n")
+                .append("}\n");
 
-            textLine = replaceVariables(textLine);
-            csvQuestionText += textLine + "\n";
+        return CodeTemplate.of(String.valueOf(code));
+    }
 
-            String[] parts = textLine.split("(?=<b>)|(?<=</b>)");
+    private static void renderTextSection(List<String> textLines, DocxWriter document, StringBuilder plainText, String questionNumber) {
+        long start = System.nanoTime();
+        boolean setQuestionText = false;
 
+        for (String textLine : textLines) {
             if (!setQuestionText && !textLine.contains("Type: ")) {
-                System.out.println("Setting type line: " + textLine);
                 setQuestionText = true;
-                XWPFRun run = paragraph.createRun();
-                run.setText(questionNumber + ". " + textLine);
-                run.addBreak();
+                if (document != null) {
+                    document.run(questionNumber + ". " + textLine, false, false, false, 1);
+                }
 
-                plainText.append(textLine).append("\n");
+                if (plainText != null) {
+                    plainText.append(textLine).append("\n");
+                }
             } else {
-                for (int i = 0; i < parts.length; i++) {
-                    String part = parts[i].replace("&nbsp;", " ");
-                    if (true) {
-                        XWPFRun run = paragraph.createRun();
+                List<String> parts = MarkupTokenizer.split(textLine);
+                for (int i = 0; i < parts.size(); i++) {
+                    String part = parts.get(i).replace("&nbsp;", " ");
+                    boolean last = i == parts.size() - 1;
+                    if (plainText != null) {
                         plainText.append(part);
-                        if (part.startsWith("<b>") || part.endsWith("<b>")) {
-                            part = part.replace("<b>", "").replace("</b>", "");
-                            run.setBold(true);
-                        } else {
-                            run.setBold(false);
-                        }
-
-                        part = part.replace("<\\/?[a-zA-Z][a-zA-Z0-9]*\\b[^>]*>", "").replace("&gt;", ">").replace("&lt;", "<").replace("</b>", "");
-                        System.out.println("HERE:" + part);
-                        run.setText(part);
-
-                        if (i == parts.length - 1) {
-                            run.addBreak();
+                        if (last) {
                             plainText.append("\n");
                         }
                     }
+                    if (document != null) {
+                        boolean bold = MarkupTokenizer.isBold(part);
+                        document.run(MarkupTokenizer.textRun(part, bold), bold, false, false, last ? 1 : 0);
+                    }
                 }
             }
         }
-
-        return csvQuestionText;
+        GeneratorMetrics.recordSince("render", "text", start);
     }
 
 
     public static Object extractValue(String str) {
         // Pattern for extracting a number
-        Pattern numberPattern = Pattern.compile("\\[(\\d+)]");
-        Matcher numberMatcher = numberPattern.matcher(str);
+        Matcher numberMatcher = NUMBER_VALUE.matcher(str);
 
         if (numberMatcher.find()) {
             return Integer.parseInt(numberMatcher.group(1));
         }
 
         // Pattern for extracting a boolean
-        Pattern booleanPattern = Pattern.compile("\\[(true|false)]");
-        Matcher booleanMatcher = booleanPattern.matcher(str);
+        Matcher booleanMatcher = BOOLEAN_VALUE.matcher(str);
 
         if (booleanMatcher.find()) {
             return Boolean.parseBoolean(booleanMatcher.group(1));
         }
 
         // Pattern for extracting a custom string inside []
-        Pattern customPattern = Pattern.compile("\\[(.*?)]");
-        Matcher customMatcher = customPattern.matcher(str);
+        Matcher customMatcher = CUSTOM_VALUE.matcher(str);
 
         if (customMatcher.find()) {
             return customMatcher.group(1);
@@ -376,201 +372,225 @@ public class QuizGenerator {
         return null;
     }
 
-    private static void processSolution(Scanner file, String nextLine, XWPFParagraph paragraph, StringBuilder plainText, boolean mustExecute, String executionCode, String questionType, String questionText, List<String[][]> allQuestions, String title) {
-        questionText = formatToHtml(questionText);
-
-        if (mustExecute) {
-            System.out.println(executionCode);
-            String[] solutionStringArray = Executor.compileAndExecute(executionCode).split("\n");
-
-            if (questionType.equalsIgnoreCase("MC")) {
-                String[] choices = new String[0];
-                String[] points = new String[0];
-                boolean readingPoints = false;
-                int index = 0;
-
-                for (String solString : solutionStringArray) {
-                    if (solString.contains("Choices:")) {
-                        int length = Integer.parseInt(solString.substring(solString.indexOf(":") + 1).trim());
-                        choices = new String[length];
-                        points = new String[length];
-                        continue;
-                    } else if (solString.contains("Points:")) {
-                        readingPoints = true;
-                        index = 0;
-                        continue;
-                    }
-
-                    if (readingPoints) {
-                        points[index] = solString;
-                    } else {
-                        choices[index] = solString;
-                    }
-
-                    index += 1;
-                }
-
-//                run.addCarriageReturn();
-                for (int i = 0; i < choices.length; i++) {
-                    String choiceString = choices[i].trim() + ": " + points[i].trim() + "%\n";
-                    String[] parts = choiceString.split("(?=<b>)|(?<=</b>)");
-
-                    for (int k = 0; k < parts.length; k++) {
-                        String part = parts[k];
-                        XWPFRun run = paragraph.createRun();
-
-                        if (i == 0 && k == 0) {
-                            run.addCarriageReturn();
-                            plainText.append("\r");
-                        }
+    // Queues the question's code and returns the step that renders its output once the quiz's code has run
+    private static Runnable processExecutedSolution(DocxWriter document, StringBuilder plainText, CodeTemplate executionCode, Map<String, Integer> choiceToPoints, String questionType, String csvQuestionText, QuestionRowSink csvRows, String title, String questionNumber, CompilationBatch batch) {
+        String questionText = csvRows != null ? formatToHtml(csvQuestionText) : null;
+
+        if (questionType.equalsIgnoreCase("MC") && isPlainChoices(choiceToPoints)) {
+            // Printing the choices through javac would only echo them back, so they are used directly
+            choicesFastPath.incrementAndGet();
+            String[] choices = choiceToPoints.keySet().toArray(new String[0]);
+            String[] points = new String[choices.length];
+            for (int i = 0; i < choices.length; i++) {
+                points[i] = String.valueOf(choiceToPoints.get(choices[i]));
+            }
+            return () -> renderChoices(choices, points, document, plainText, questionText, csvRows, title);
+        } else {
+            log.debug("Question {} runs:\n{}", questionNumber, executionCode);
+            CompilationBatch.Entry execution = batch.add("Question " + questionNumber, GeneratorMetrics.questionType(questionType), executionCode);
+            return () -> renderExecutedSolution(execution, document, plainText, questionType, questionText, csvRows, title);
+        }
+    }
 
-                        plainText.append(part);
-                        if (part.startsWith("<b>") || part.endsWith("<b>")) {
-                            part = part.replace("<b>", "").replace("</b>", "");
-                            run.setBold(true);
-                        } else {
-                            run.setBold(false);
-                        }
-                        run.setText(part);
+    // Evaluates the solution now and returns the step that renders it in document order
+    private static Runnable processEvaluatedSolution(QuizTemplate.EvaluatedSolution evaluated, VariableContext variables, DocxWriter document, StringBuilder plainText, String csvQuestionText, QuestionRowSink csvRows, String title) {
+        String questionText = csvRows != null ? formatToHtml(csvQuestionText) : null;
+        long evaluateStart = System.nanoTime();
+        double result = EvaluateExpression.evaluateExpression(evaluated.expression(), variables);
+        GeneratorMetrics.recordSince("evaluate", GeneratorMetrics.EXPRESSION, evaluateStart);
+        String resultString = formatResult(evaluated.solutionType(), result);
 
-                        if (k == parts.length - 1) {
-                            run.addCarriageReturn();
-                            plainText.append("\r");
-                        }
+        String solution = formatSolution(resultString, evaluated.units());
 
-                        if (i == choices.length - 1) {
-                            run.addBreak();
-                            run.addBreak();
-                            plainText.append("\n");
-                            plainText.append("\n");
-                        }
-                    }
+        return () -> {
+            long start = System.nanoTime();
+            if (document != null) {
+                document.run(solution, false, false, false, 2);
+            }
+            if (plainText != null) {
+                plainText.append(solution);
+                plainText.append("\n\n");
+            }
+            if (csvRows == null) {
+                GeneratorMetrics.recordSince("render", GeneratorMetrics.EXPRESSION, start);
+                return;
+            }
 
+            // Generate CSV
+            String str = solution.replaceAll("[\\[\\]]", "").trim();
+            String[] entries = str.split("\\s*,\\s*");
 
-//                    run.setText(choiceString);
-//                    run.addCarriageReturn();
-                }
+            String[][] csvData = new String[6 + entries.length][];
+            csvData[0] = new String[]{"NewQuestion", "SA"};
+            csvData[1] = new String[]{"Title", title};
+            csvData[2] = new String[]{"QuestionText", questionText, "html"};
+            csvData[3] = new String[]{"Points", "1"};
+            csvData[4] = new String[]{"Difficulty", "1"};
+            csvData[5] = new String[]{"InputBox", String.valueOf(entries.length), "40"};
+            for (int i = 0; i < entries.length; i++) {
+                csvData[6 + i] = new String[]{"Answer", "100", String.valueOf(entries[i])};
+            }
 
-//                run.addBreak();
-//                run.addBreak();
+            long csvNanos = writeRows(csvRows, csvData, GeneratorMetrics.EXPRESSION);
+            GeneratorMetrics.record("render", GeneratorMetrics.EXPRESSION, System.nanoTime() - start - csvNanos);
+        };
+    }
 
+    private static void renderExecutedSolution(CompilationBatch.Entry execution, DocxWriter document, StringBuilder plainText, String questionType, String questionText, QuestionRowSink csvRows, String title) {
+        if (execution.output() == null) {
+            throw new IllegalStateException(execution.error());
+        }
 
-                // Generate CSV
-                String[][] csvData = new String[5 + choices.length][];
-                csvData[0] = new String[]{"NewQuestion", "MC"};
-                csvData[1] = new String[]{"Title", title};
-                csvData[2] = new String[]{"QuestionText", questionText, "html"};
-                csvData[3] = new String[]{"Points", "1"};
-                csvData[4] = new String[]{"Difficulty", "1"};
-                for (int i = 0; i < choices.length; i++) {
-                    csvData[5 + i] = new String[]{"Option", points[i].trim(), choices[i].trim(), "html"};
+        long start = System.nanoTime();
+        String[] solutionStringArray = execution.output().split("\n");
+
+        if (questionType.equalsIgnoreCase("MC")) {
+            String[] choices = new String[0];
+            String[] points = new String[0];
+            boolean readingPoints = false;
+            int index = 0;
+
+            for (String solString : solutionStringArray) {
+                if (solString.contains("Choices:")) {
+                    int length = Integer.parseInt(solString.substring(solString.indexOf(":") + 1).trim());
+                    choices = new String[length];
+                    points = new String[length];
+                    continue;
+                } else if (solString.contains("Points:")) {
+                    readingPoints = true;
+                    index = 0;
+                    continue;
                 }
 
-
-                allQuestions.add(csvData);
-
-            } else {
-                // Generate CSV
-                String[][] csvData = new String[6 + solutionStringArray.length][];
-                csvData[0] = new String[]{"NewQuestion", "SA"};
-                csvData[1] = new String[]{"Title", title};
-                csvData[2] = new String[]{"QuestionText", questionText, "html"};
-                csvData[3] = new String[]{"Points", "1"};
-                csvData[4] = new String[]{"Difficulty", "1"};
-                csvData[5] = new String[]{"InputBox", String.valueOf(solutionStringArray.length), "40"};
-                for (int i = 0; i < solutionStringArray.length; i++) {
-                    csvData[6 + i] = new String[]{"Answer", "100", String.valueOf(extractValue(solutionStringArray[i]))};
+                if (readingPoints) {
+                    points[index] = solString;
+                } else {
+                    choices[index] = solString;
                 }
 
-                allQuestions.add(csvData);
+                index += 1;
+            }
 
-//                run.addCarriageReturn();
-                for (int i = 0; i < solutionStringArray.length; i++) {
-                    String solString = solutionStringArray[i];
-                    String[] parts = solString.split("(?=<b>)|(?<=</b>)");
+            renderChoices(choices, points, document, plainText, questionText, csvRows, title);
+        } else {
+            long csvNanos = 0;
+            if (csvRows != null) {
+                csvNanos = writeRows(csvRows, shortAnswerRows(solutionStringArray, questionText, title), "SA");
+            }
 
-                    for (int k = 0; k < parts.length; k++) {
-                        String part = parts[k];
-                        XWPFRun run = paragraph.createRun();
+            for (int i = 0; i < solutionStringArray.length; i++) {
+                renderAnswerLine(solutionStringArray[i], i == 0, i == solutionStringArray.length - 1, document, plainText);
+            }
+            GeneratorMetrics.record("render", "SA", System.nanoTime() - start - csvNanos);
+        }
+    }
 
-                        if (i == 0 && k == 0) {
-                            run.addCarriageReturn();
-                            plainText.append("\r");
-                        }
+    private static String[][] shortAnswerRows(String[] solutionStringArray, String questionText, String title) {
+        // Generate CSV
+        String[][] csvData = new String[6 + solutionStringArray.length][];
+        csvData[0] = new String[]{"NewQuestion", "SA"};
+        csvData[1] = new String[]{"Title", title};
+        csvData[2] = new String[]{"QuestionText", questionText, "html"};
+        csvData[3] = new String[]{"Points", "1"};
+        csvData[4] = new String[]{"Difficulty", "1"};
+        csvData[5] = new String[]{"InputBox", String.valueOf(solutionStringArray.length), "40"};
+        for (int i = 0; i < solutionStringArray.length; i++) {
+            csvData[6 + i] = new String[]{"Answer", "100", String.valueOf(extractValue(solutionStringArray[i]))};
+        }
+        return csvData;
+    }
 
-                        plainText.append(part);
-                        if (part.startsWith("<b>") || part.endsWith("<b>")) {
-                            part = part.replace("<b>", "").replace("</b>", "");
-                            run.setBold(true);
-                        } else {
-                            run.setBold(false);
-                        }
-                        run.setText(part);
+    // One line of an answer or of the choices. A carriage return opens the list and ends every line, and each
+    // run of the last line adds two breaks.
+    private static void renderAnswerLine(String line, boolean first, boolean last, DocxWriter document, StringBuilder plainText) {
+        if (document == null && plainText == null) {
+            return;
+        }
+        List<String> parts = MarkupTokenizer.split(line);
 
-                        if (k == parts.length - 1) {
-                            run.addCarriageReturn();
-                            plainText.append("\r");
-                        }
+        for (int k = 0; k < parts.size(); k++) {
+            String part = parts.get(k);
+            boolean opens = first && k == 0;
+            boolean closes = k == parts.size() - 1;
 
-                        if (i == solutionStringArray.length - 1) {
-                            run.addBreak();
-                            run.addBreak();
-                            plainText.append("\n");
-                            plainText.append("\n");
-                        }
-                    }
-//                    run.setText(solString);
-//                    run.addCarriageReturn();
+            if (plainText != null) {
+                if (opens) {
+                    plainText.append("\r");
+                }
+                plainText.append(part);
+                if (closes) {
+                    plainText.append("\r");
+                }
+                if (last) {
+                    plainText.append("\n");
+                    plainText.append("\n");
                 }
-//                run.addBreak();
-//                run.addBreak();
             }
-        } else {
-            int colonIndex = nextLine.indexOf(":");
-            String solutionString = nextLine.substring(colonIndex + 1).trim();
-            solutionString = replaceVariables(solutionString);
-            double result = EvaluateExpression.evaluateExpression(solutionString);
-            String resultString = formatResult(file, result);
-            List<String> units = readUnits(file);
 
-            String solution = formatSolution(resultString, units);
+            if (document != null) {
+                boolean bold = MarkupTokenizer.isBold(part);
+                document.run(bold ? MarkupTokenizer.stripBold(part) : part, bold, opens, closes, last ? 2 : 0);
+            }
+        }
+    }
 
-            XWPFRun run = paragraph.createRun();
-            run.setText(solution);
-            run.addBreak();
-            run.addBreak();
-            plainText.append(solution);
-            plainText.append("\n\n");
+    // Hands a question's rows to the sink and returns how long that took, so render times can leave it out
+    private static long writeRows(QuestionRowSink csvRows, String[][] rows, String type) {
+        long start = System.nanoTime();
+        csvRows.accept(rows);
+        long elapsed = System.nanoTime() - start;
+        GeneratorMetrics.record("csv", type, elapsed);
+        return elapsed;
+    }
 
+    private static void renderChoices(String[] choices, String[] points, DocxWriter document, StringBuilder plainText, String questionText, QuestionRowSink csvRows, String title) {
+        long start = System.nanoTime();
+        for (int i = 0; i < choices.length; i++) {
+            String choiceString = choices[i].trim() + ": " + points[i].trim() + "%\n";
+            renderAnswerLine(choiceString, i == 0, i == choices.length - 1, document, plainText);
+        }
+        if (csvRows == null) {
+            GeneratorMetrics.recordSince("render", "MC", start);
+            return;
+        }
 
-            // Generate CSV
-            String str = solution.replaceAll("[\\[\\]]", "").trim();
-            String[] entries = str.split("\\s*,\\s*");
+        // Generate CSV
+        String[][] csvData = new String[5 + choices.length][];
+        csvData[0] = new String[]{"NewQuestion", "MC"};
+        csvData[1] = new String[]{"Title", title};
+        csvData[2] = new String[]{"QuestionText", questionText, "html"};
+        csvData[3] = new String[]{"Points", "1"};
+        csvData[4] = new String[]{"Difficulty", "1"};
+        for (int i = 0; i < choices.length; i++) {
+            csvData[5 + i] = new String[]{"Option", points[i].trim(), choices[i].trim(), "html"};
+        }
 
-            String[][] csvData = new String[6 + entries.length][];
-            csvData[0] = new String[]{"NewQuestion", "SA"};
-            csvData[1] = new String[]{"Title", title};
-            csvData[2] = new String[]{"QuestionText", questionText, "html"};
-            csvData[3] = new String[]{"Points", "1"};
-            csvData[4] = new String[]{"Difficulty", "1"};
-            csvData[5] = new String[]{"InputBox", String.valueOf(entries.length), "40"};
-            for (int i = 0; i < entries.length; i++) {
-                csvData[6 + i] = new String[]{"Answer", "100", String.valueOf(entries[i])};
-            }
 
-            allQuestions.add(csvData);
+        long csvNanos = writeRows(csvRows, csvData, "MC");
+        GeneratorMetrics.record("render", "MC", System.nanoTime() - start - csvNanos);
+    }
 
+    // Whether the choices come out of the generated program exactly as they went in: anything javac would read as
+    // an escape or end of the literal, and the markers its output is parsed by, still go through the program
+    private static boolean isPlainChoices(Map<String, Integer> choiceToPoints) {
+        if (choiceToPoints == null) {
+            return false;
         }
+        for (String choice : choiceToPoints.keySet()) {
+            if (choice.contains("\\") || choice.contains("\"") || choice.contains("Choices:") || choice.contains("Points:")) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    private static String formatResult(Scanner file, double result) {
-        String resultString;
-        String type = "double";
-        String nextLine = file.nextLine();
-        if (nextLine.startsWith(SOLUTION_TYPE_PREFIX)) {
-            type = nextLine.substring(nextLine.indexOf(":") + 1).trim();
-        }
+    // MC questions whose choices were used without compiling and running them
+    public static long choicesFastPathCount() {
+        return choicesFastPath.get();
+    }
 
+    private static String formatResult(String type, double result) {
+        String resultString;
         switch (type) {
             case "long":
                 resultString = String.valueOf((long) result);
@@ -591,19 +611,6 @@ public class QuizGenerator {
         return resultString;
     }
 
-    private static List<String> readUnits(Scanner file) {
-        List<String> units = new ArrayList<>();
-        String nextLine = file.nextLine();
-        if (nextLine.startsWith(UNIT_PREFIX)) {
-            String unitString = nextLine.substring(nextLine.indexOf("{") + 1, nextLine.indexOf("}"));
-            units = Arrays.asList(unitString.split(","));
-            for (int i = 0; i < units.size(); i++) {
-                units.set(i, units.get(i).trim());
-            }
-        }
-        return units;
-    }
-
     private static String formatSolution(String resultString, List<String> units) {
         StringBuilder solutionBuilder = new StringBuilder("[");
         for (String unit : units) {
@@ -0,0 +1,101 @@
+package com.example.quizgenbackend.generator;
+
+import java.util.List;
+
+// A parsed quiz template: the statements of the template DSL in the order generateQuizFile applies them.
+// Holds no variable values, so one instance is shared by every generation of the same input.
+public final class QuizTemplate {
+    private final List<Statement> statements;
+    private final List<String> warnings;
+    private final int sourceLength;
+    private final int questionCount;
+
+    QuizTemplate(List<Statement> statements, List<String> warnings, int sourceLength) {
+        this.statements = List.copyOf(statements);
+        this.warnings = List.copyOf(warnings);
+        this.sourceLength = sourceLength;
+
+        int solutions = 0;
+        for (Statement statement : statements) {
+            if (statement instanceof ExecutedSolution || statement instanceof EvaluatedSolution) {
+                solutions++;
+            }
+        }
+        this.questionCount = solutions;
+    }
+
+    public List<Statement> statements() {
+        return statements;
+    }
+
+    // Problems the parser worked around, such as skipped choice entries, each prefixed with its line
+    public List<String> warnings() {
+        return warnings;
+    }
+
+    public int sourceLength() {
+        return sourceLength;
+    }
+
+    // Every Solution: renders one question into the document and the CSV
+    public int questionCount() {
+        return questionCount;
+    }
+
+    // Every statement knows the template line it came from
+    public sealed interface Statement permits Title, QuestionStart, Linked, SetVariable, PickVariable, AddVariable,
+            RandomInt, RandomDouble, CodeSection, ChoicesSection, TextSection, QuestionType, ExecutedSolution,
+            EvaluatedSolution {
+        int line();
+    }
+
+    public record Title(int line, String text) implements Statement {
+    }
+
+    public record QuestionStart(int line, String number) implements Statement {
+    }
+
+    // :Linked: makes the set picks that follow in the question use the same index
+    public record Linked(int line) implements Statement {
+    }
+
+    public record SetVariable(int line, String name, List<String> values) implements Statement {
+    }
+
+    public record PickVariable(int line, String name, String setName) implements Statement {
+    }
+
+    public record AddVariable(int line, String name, String reference, int amount) implements Statement {
+    }
+
+    public record RandomInt(int line, String name, int min, int max) implements Statement {
+    }
+
+    // A whole number between min and max plus a random tenth
+    public record RandomDouble(int line, String name, int min, int max) implements Statement {
+    }
+
+    public record CodeSection(int line, List<String> lines) implements Statement {
+    }
+
+    // Choice texts still contain their #var# placeholders
+    public record ChoicesSection(int line, List<Choice> choices) implements Statement {
+    }
+
+    public record Choice(int points, String text) {
+    }
+
+    public record TextSection(int line, List<String> lines) implements Statement {
+    }
+
+    public record QuestionType(int line, String type) implements Statement {
+    }
+
+    // Solution: of a question with :Code: or :Choices:, answered by what that code prints
+    public record ExecutedSolution(int line) implements Statement {
+    }
+
+    // Solution: with an expression, formatted as solutionType and listed once per unit
+    public record EvaluatedSolution(int line, String expression, String solutionType, List<String> units) implements Statement {
+    }
+}
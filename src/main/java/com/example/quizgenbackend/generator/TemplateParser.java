@@ -0,0 +1,267 @@
+package com.example.quizgenbackend.generator;
+
+import com.example.quizgenbackend.cache.ContentHash;
+import com.example.quizgenbackend.cache.WeightedLruCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.example.quizgenbackend.generator.QuizGenerator.CHOICES_PREFIX;
+import static com.example.quizgenbackend.generator.QuizGenerator.CODE_SECTION;
+import static com.example.quizgenbackend.generator.QuizGenerator.END_CHOICES_SECTION;
+import static com.example.quizgenbackend.generator.QuizGenerator.END_CODE_SECTION;
+import static com.example.quizgenbackend.generator.QuizGenerator.END_TEXT_SECTION;
+import static com.example.quizgenbackend.generator.QuizGenerator.QUESTION_PREFIX;
+import static com.example.quizgenbackend.generator.QuizGenerator.QUESTION_TYPE_PREFIX;
+import static com.example.quizgenbackend.generator.QuizGenerator.SOLUTION_PREFIX;
+import static com.example.quizgenbackend.generator.QuizGenerator.SOLUTION_TYPE_PREFIX;
+import static com.example.quizgenbackend.generator.QuizGenerator.TEXT_SECTION;
+import static com.example.quizgenbackend.generator.QuizGenerator.TITLE_PREFIX;
+import static com.example.quizgenbackend.generator.QuizGenerator.UNIT_PREFIX;
+
+// Turns the template DSL into a QuizTemplate. Lines are read exactly as generateQuizFile always read them:
+// empty lines and lines containing ## are skipped outside sections, sections run up to their end marker and
+// an expression Solution: takes the next two lines as its SolutionType: and Unit: lines, whatever they hold.
+public class TemplateParser {
+    private static final Logger log = LoggerFactory.getLogger(TemplateParser.class);
+    // Parsed templates by the hash of their input, weighed by input length
+    public static final WeightedLruCache<String, QuizTemplate> CACHE =
+            new WeightedLruCache<>(8L * 1024 * 1024, template -> 2L * template.sourceLength());
+
+    private final String[] lines;
+    private final List<QuizTemplate.Statement> statements = new ArrayList<>();
+    private final List<String> warnings = new ArrayList<>();
+    private int next;
+
+    private TemplateParser(String input) {
+        // The line breaks Scanner.nextLine splits on; trailing empty lines were never reached either
+        this.lines = input.split("\\r\\n|[\\n\\r\\u2028\\u2029\\u0085]");
+    }
+
+    // Returns the cached template for this input, parsing it the first time
+    public static QuizTemplate parseCached(String input) {
+        String key = ContentHash.sha256(input);
+        QuizTemplate template = CACHE.get(key);
+        if (template == null) {
+            template = parse(input);
+            CACHE.put(key, template);
+        }
+        return template;
+    }
+
+    public static QuizTemplate parse(String input) {
+        long start = System.nanoTime();
+        TemplateParser parser = new TemplateParser(input);
+        parser.parseStatements();
+        GeneratorMetrics.recordSince("parse", GeneratorMetrics.QUIZ, start);
+        for (String warning : parser.warnings) {
+            log.debug(warning);
+        }
+        return new QuizTemplate(parser.statements, parser.warnings, input.length());
+    }
+
+    private void parseStatements() {
+        // Whether the current question has :Code: or :Choices:, which decides what its Solution: is
+        boolean mustExecute = false;
+
+        while (hasNext()) {
+            int lineNumber = next + 1;
+            String line = nextLine();
+            if (line.isEmpty() || line.contains("##")) continue;
+
+            if (line.contains(":Linked:")) {
+                statements.add(new QuizTemplate.Linked(lineNumber));
+            }
+
+            if (line.contains(QUESTION_PREFIX)) {
+                int hashIndex = line.indexOf("#");
+                int colonIndex = line.indexOf(":");
+                if (colonIndex <= hashIndex) {
+                    throw new TemplateException(lineNumber, "Expected Question #<number>:");
+                }
+                statements.add(new QuizTemplate.QuestionStart(lineNumber, line.substring(hashIndex + 1, colonIndex)));
+                mustExecute = false;
+            } else if (line.contains(TITLE_PREFIX)) {
+                statements.add(new QuizTemplate.Title(lineNumber, line.substring(line.indexOf(":") + 1).trim()));
+            }
+
+            if (line.startsWith("#")) {
+                parseVariable(lineNumber, line);
+            } else if (line.equals(CODE_SECTION)) {
+                mustExecute = true;
+                statements.add(new QuizTemplate.CodeSection(lineNumber, readSection(lineNumber, END_CODE_SECTION)));
+            } else if (line.equals(CHOICES_PREFIX)) {
+                mustExecute = true;
+                statements.add(new QuizTemplate.ChoicesSection(lineNumber, parseChoices(lineNumber)));
+            } else if (line.equals(TEXT_SECTION)) {
+                statements.add(new QuizTemplate.TextSection(lineNumber, readSection(lineNumber, END_TEXT_SECTION)));
+            } else if (line.contains(SOLUTION_PREFIX)) {
+                statements.add(mustExecute ? new QuizTemplate.ExecutedSolution(lineNumber) : parseSolution(lineNumber, line));
+            } else if (line.contains(QUESTION_TYPE_PREFIX)) {
+                statements.add(new QuizTemplate.QuestionType(lineNumber, line.substring(line.indexOf(":") + 1).trim()));
+            }
+        }
+    }
+
+    // #R1: int, random, 1, 10 / #S1: { a, b } / #P1: from #S1# / #A1: A1, add, 5 (with #R1# referenced)
+    private void parseVariable(int lineNumber, String line) {
+        if (line.length() < 3) {
+            throw new TemplateException(lineNumber, "Expected a two-character variable name after #");
+        }
+        String name = line.substring(1, 3);
+        String sub = line.substring(line.indexOf(":") + 1);
+
+        try {
+            if (sub.contains("{")) {
+                List<String> values = Arrays.asList(sub.substring(2, sub.length() - 1).split(","));
+                statements.add(new QuizTemplate.SetVariable(lineNumber, name, values));
+            } else if (sub.contains("from")) {
+                statements.add(new QuizTemplate.PickVariable(lineNumber, name, placeholderIn(lineNumber, sub)));
+            } else if (sub.contains("#")) {
+                String[] information = sub.trim().split(",");
+                if (information.length < 3) {
+                    throw new TemplateException(lineNumber, "Expected <name>, <method>, <value>");
+                }
+                if (information[1].trim().equalsIgnoreCase("add")) {
+                    statements.add(new QuizTemplate.AddVariable(lineNumber, name, placeholderIn(lineNumber, sub),
+                            Integer.parseInt(information[2].trim())));
+                }
+            } else {
+                String[] information = sub.trim().split(",");
+                if (information.length < 2) {
+                    throw new TemplateException(lineNumber, "Expected <type>, <generation>, ...");
+                }
+                String type = information[0].trim();
+                String generation = information[1].trim();
+
+                if (generation.equals("random") && (type.equals("int") || type.equals("double"))) {
+                    if (information.length < 4) {
+                        throw new TemplateException(lineNumber, "Expected " + type + ", random, <min>, <max>");
+                    }
+                    int min = Integer.parseInt(information[2].trim());
+                    int max = Integer.parseInt(information[3].trim());
+                    if (max < min) {
+                        throw new TemplateException(lineNumber, "The maximum " + max + " is below the minimum " + min);
+                    }
+                    statements.add(type.equals("int")
+                            ? new QuizTemplate.RandomInt(lineNumber, name, min, max)
+                            : new QuizTemplate.RandomDouble(lineNumber, name, min, max));
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new TemplateException(lineNumber, "Not a whole number: " + e.getMessage());
+        } catch (StringIndexOutOfBoundsException e) {
+            throw new TemplateException(lineNumber, "Malformed variable definition");
+        }
+    }
+
+    private static String placeholderIn(int lineNumber, String text) {
+        int hashMark = text.indexOf("#");
+        int hashMark2 = text.indexOf("#", hashMark + 1);
+        if (hashMark2 == -1) {
+            throw new TemplateException(lineNumber, "Expected a #name# reference");
+        }
+        return text.substring(hashMark + 1, hashMark2);
+    }
+
+    private List<QuizTemplate.Choice> parseChoices(int sectionLine) {
+        List<QuizTemplate.Choice> choices = new ArrayList<>();
+        boolean ended = false;
+
+        while (hasNext()) {
+            int lineNumber = next + 1;
+            String textLine = nextLine().trim();
+            if (textLine.equals(END_CHOICES_SECTION)) {
+                ended = true;
+                break;
+            }
+
+            int commaIndex = textLine.indexOf(",");
+            if (commaIndex > 0) {
+                try {
+                    int points = Integer.parseInt(textLine.substring(0, commaIndex).trim());
+                    choices.add(new QuizTemplate.Choice(points, textLine.substring(commaIndex + 1).replaceFirst("^,+", "")));
+                } catch (NumberFormatException e) {
+                    warnings.add("line " + lineNumber + ": Skipping invalid entry: " + textLine);
+                }
+            }
+        }
+
+        if (!ended) {
+            warnings.add("line " + sectionLine + ": " + CHOICES_PREFIX + " has no " + END_CHOICES_SECTION);
+        }
+        return choices;
+    }
+
+    private List<String> readSection(int sectionLine, String endMarker) {
+        List<String> sectionLines = new ArrayList<>();
+        while (hasNext()) {
+            String line = nextLine();
+            if (line.equals(endMarker)) {
+                return sectionLines;
+            }
+            sectionLines.add(line);
+        }
+
+        warnings.add("line " + sectionLine + ": section has no " + endMarker);
+        return sectionLines;
+    }
+
+    private QuizTemplate.EvaluatedSolution parseSolution(int lineNumber, String line) {
+        String expression = line.substring(line.indexOf(":") + 1).trim();
+        try {
+            EvaluateExpression.compile(expression);
+        } catch (IllegalArgumentException e) {
+            throw new TemplateException(lineNumber, e.getMessage());
+        }
+
+        if (!hasNext()) {
+            throw new TemplateException(lineNumber, "Solution: must be followed by a SolutionType: and a Unit: line");
+        }
+        String typeLine = nextLine();
+        String type = "double";
+        if (typeLine.startsWith(SOLUTION_TYPE_PREFIX)) {
+            type = typeLine.substring(typeLine.indexOf(":") + 1).trim();
+        }
+
+        if (!hasNext()) {
+            throw new TemplateException(lineNumber, "Solution: must be followed by a SolutionType: and a Unit: line");
+        }
+        int unitLineNumber = next + 1;
+        String unitLine = nextLine();
+        if (!unitLine.startsWith(UNIT_PREFIX) || unitLine.indexOf("{") == -1 || unitLine.indexOf("}") < unitLine.indexOf("{")) {
+            throw new TemplateException(unitLineNumber, "Expected Unit: {<unit>, ...} after the solution");
+        }
+
+        List<String> units = new ArrayList<>();
+        for (String unit : unitLine.substring(unitLine.indexOf("{") + 1, unitLine.indexOf("}")).split(",")) {
+            units.add(unit.trim());
+        }
+        return new QuizTemplate.EvaluatedSolution(lineNumber, expression, type, units);
+    }
+
+    private boolean hasNext() {
+        return next < lines.length;
+    }
+
+    private String nextLine() {
+        return lines[next++];
+    }
+
+    // A template that cannot be generated, with the 1-based line the problem is on
+    public static class TemplateException extends IllegalArgumentException {
+        private final int lineNumber;
+
+        public TemplateException(int lineNumber, String message) {
+            super("line " + lineNumber + ": " + message);
+            this.lineNumber = lineNumber;
+        }
+
+        public int lineNumber() {
+            return lineNumber;
+        }
+    }
+}
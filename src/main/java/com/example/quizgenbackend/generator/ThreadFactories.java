@@ -0,0 +1,56 @@
+package com.example.quizgenbackend.generator;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Threads for the service's own pools. With virtual threads enabled and a Java 21+ runtime, the pools get
+// virtual threads, since they mostly wait: on DynamicCode runs, worker JVMs, or the generation they hand out.
+// On older runtimes the same setting quietly falls back to daemon platform threads. DynamicCode itself always
+// runs on a platform thread, because the sandbox needs Thread.stop and per-thread CPU time, and virtual
+// threads support neither.
+public final class ThreadFactories {
+    private static volatile boolean virtual;
+
+    private ThreadFactories() {
+    }
+
+    // Returns whether virtual threads will actually be used
+    public static boolean setVirtual(boolean enabled) {
+        virtual = enabled && virtualFactory("probe-") != null;
+        return virtual;
+    }
+
+    public static boolean isVirtual() {
+        return virtual;
+    }
+
+    // Names threads prefix1, prefix2, ...
+    public static ThreadFactory named(String prefix) {
+        if (virtual) {
+            ThreadFactory factory = virtualFactory(prefix);
+            if (factory != null) {
+                return factory;
+            }
+        }
+
+        AtomicLong threadCount = new AtomicLong();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // Thread.ofVirtual().name(prefix, 1).factory(), looked up reflectively so the service still builds for Java 17
+    private static ThreadFactory virtualFactory(String prefix) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 1L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Before Java 21, or 19 and 20 without --enable-preview
+            return null;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.quizgenbackend.generator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// The #var# values of one generation, together with the Random they are drawn from. Every call to
+// generateQuizFile gets its own, so concurrent generations never see each other's values. Numbers are
+// kept unboxed in a slot per name; text and set values sit in a parallel object array.
+public final class VariableContext {
+    private static final byte INT = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte TEXT = 3;
+    private static final byte SET = 4;
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final Random random;
+    private byte[] kinds = new byte[8];
+    private double[] numbers = new double[8];
+    private Object[] objects = new Object[8];
+
+    public VariableContext() {
+        this(new Random());
+    }
+
+    public VariableContext(Random random) {
+        this.random = random;
+    }
+
+    public Random random() {
+        return random;
+    }
+
+    public void putInt(String name, int value) {
+        int slot = slotFor(name);
+        kinds[slot] = INT;
+        numbers[slot] = value;
+        objects[slot] = null;
+    }
+
+    public void putDouble(String name, double value) {
+        int slot = slotFor(name);
+        kinds[slot] = DOUBLE;
+        numbers[slot] = value;
+        objects[slot] = null;
+    }
+
+    public void putText(String name, String value) {
+        int slot = slotFor(name);
+        kinds[slot] = TEXT;
+        objects[slot] = value;
+    }
+
+    public void putSet(String name, List<String> values) {
+        int slot = slotFor(name);
+        kinds[slot] = SET;
+        objects[slot] = List.copyOf(values);
+    }
+
+    public boolean contains(String name) {
+        return slots.containsKey(name);
+    }
+
+    public boolean isNumber(String name) {
+        Integer slot = slots.get(name);
+        return slot != null && (kinds[slot] == INT || kinds[slot] == DOUBLE);
+    }
+
+    // The value as a double, for numbers and for text that is a plain number
+    public double number(String name) {
+        int slot = existingSlot(name);
+        if (kinds[slot] == INT || kinds[slot] == DOUBLE) {
+            return numbers[slot];
+        }
+        return Double.parseDouble(String.valueOf(objects[slot]));
+    }
+
+    public int intValue(String name) {
+        int slot = existingSlot(name);
+        if (kinds[slot] != INT) {
+            throw new IllegalArgumentException(name + " is not an int variable");
+        }
+        return (int) numbers[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<String> set(String name) {
+        int slot = existingSlot(name);
+        if (kinds[slot] != SET) {
+            throw new IllegalArgumentException(name + " is not a set");
+        }
+        return (List<String>) objects[slot];
+    }
+
+    // The value as it is pasted into question text and code
+    public String text(String name) {
+        int slot = existingSlot(name);
+        switch (kinds[slot]) {
+            case INT:
+                return Integer.toString((int) numbers[slot]);
+            case DOUBLE:
+                return Double.toString(numbers[slot]);
+            default:
+                return String.valueOf(objects[slot]);
+        }
+    }
+
+    // The value boxed as Integer, Double, String or List, or null when the name is not defined
+    public Object get(String name) {
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            return null;
+        }
+        switch (kinds[slot]) {
+            case INT:
+                return (int) numbers[slot];
+            case DOUBLE:
+                return numbers[slot];
+            default:
+                return objects[slot];
+        }
+    }
+
+    private int existingSlot(String name) {
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            throw new IllegalArgumentException(name + " is not a defined variable");
+        }
+        return slot;
+    }
+
+    private int slotFor(String name) {
+        Integer slot = slots.get(name);
+        if (slot != null) {
+            return slot;
+        }
+
+        int added = slots.size();
+        if (added == kinds.length) {
+            kinds = Arrays.copyOf(kinds, added * 2);
+            numbers = Arrays.copyOf(numbers, added * 2);
+            objects = Arrays.copyOf(objects, added * 2);
+        }
+        slots.put(name, added);
+        return added;
+    }
+}
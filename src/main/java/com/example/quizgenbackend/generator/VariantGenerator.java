@@ -0,0 +1,190 @@
+package com.example.quizgenbackend.generator;
+
+import com.opencsv.CSVWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Generates many randomized versions of one quiz. The template is parsed once and every variant draws its
+// values from its own seeded Random, so the same input, count and seed always produce the same variants.
+public class VariantGenerator {
+    private static final String[] ANSWER_KEY_HEADER = {"Variant", "Seed", "Question", "Type", "Answer"};
+
+    private static volatile ExecutorService pool;
+    private static volatile int maxVariants = 500;
+
+    public static void setParallelism(int parallelism) {
+        ExecutorService previous;
+        synchronized (VariantGenerator.class) {
+            previous = pool;
+            pool = newPool(parallelism);
+        }
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    public static void setMaxVariants(int max) {
+        maxVariants = max;
+    }
+
+    public static int maxVariants() {
+        return maxVariants;
+    }
+
+    private static ExecutorService pool() {
+        ExecutorService executorService = pool;
+        if (executorService == null) {
+            synchronized (VariantGenerator.class) {
+                executorService = pool;
+                if (executorService == null) {
+                    executorService = newPool(Runtime.getRuntime().availableProcessors());
+                    pool = executorService;
+                }
+            }
+        }
+        return executorService;
+    }
+
+    private static ExecutorService newPool(int parallelism) {
+        return Executors.newFixedThreadPool(parallelism, ThreadFactories.named("quiz-variant-"));
+    }
+
+    // Variant i (1-based) is generated with the i-th long drawn from new Random(seed). Variants are handed to
+    // the consumer in order; only a few ahead of the one being consumed are kept in memory.
+    public static void generate(String input, int count, long seed, VariantConsumer consumer) throws IOException {
+        if (count < 1 || count > maxVariants) {
+            throw new IllegalArgumentException("Variant count must be between 1 and " + maxVariants);
+        }
+
+        QuizTemplate template = TemplateParser.parseCached(input);
+        Random seeds = new Random(seed);
+        long[] variantSeeds = new long[count];
+        for (int i = 0; i < count; i++) {
+            variantSeeds[i] = seeds.nextLong();
+        }
+
+        // The first variant runs alone, so its code is compiled once and the others find it in the class cache
+        consumer.accept(generate(template, 1, variantSeeds[0]));
+
+        int window = 2 * Runtime.getRuntime().availableProcessors();
+        Deque<Future<Variant>> pending = new ArrayDeque<>();
+        int submitted = 1;
+        try {
+            while (submitted < count || !pending.isEmpty()) {
+                while (submitted < count && pending.size() < window) {
+                    int number = submitted + 1;
+                    long variantSeed = variantSeeds[submitted];
+                    pending.add(pool().submit(() -> generateOrFail(template, number, variantSeed)));
+                    submitted++;
+                }
+                consumer.accept(pending.remove().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while generating variants", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Variant generation failed", e.getCause());
+        } finally {
+            for (Future<Variant> variant : pending) {
+                variant.cancel(true);
+            }
+        }
+    }
+
+    // Variants are generated side by side but written out one at a time, so each keeps its compressed DOCX and
+    // its CSV as bytes until its turn comes. Its answer key rows are picked out of the CSV rows as they go by.
+    private static Variant generate(QuizTemplate template, int number, long seed) throws IOException {
+        ByteArrayOutputStream docxOutput = new ByteArrayOutputStream();
+        ByteArrayOutputStream csvOutput = new ByteArrayOutputStream();
+        CsvRowWriter csv = new CsvRowWriter(csvOutput);
+        List<String[]> answerKey = new ArrayList<>();
+
+        QuizGenerator.generateQuiz(template, new VariableContext(new Random(seed)), EnumSet.of(OutputFormat.ZIP), docxOutput, rows -> {
+            csv.accept(rows);
+            answerKey.add(answerKeyRow(number, seed, answerKey.size() + 1, rows));
+        });
+        csv.finish();
+        return new Variant(number, seed, docxOutput.toByteArray(), csvOutput.toByteArray(), answerKey);
+    }
+
+    // Once the first variant is out the archive can no longer become an error response, so the code of a later
+    // variant that does not compile or fails when it runs with its values is reported in place of its files
+    private static Variant generateOrFail(QuizTemplate template, int number, long seed) throws IOException {
+        try {
+            return generate(template, number, seed);
+        } catch (CompilationBatch.CompilationException | CompilationBatch.ExecutionFailedException e) {
+            return new Variant(number, seed, e.getMessage());
+        }
+    }
+
+    // The answer key row of one question: the answers that score points
+    private static String[] answerKeyRow(int variant, long seed, int questionNumber, String[][] question) {
+        List<String> answers = new ArrayList<>();
+        for (String[] row : question) {
+            if (row[0].equals("Answer")) {
+                answers.add(row[2]);
+            } else if (row[0].equals("Option") && !row[1].equals("0")) {
+                answers.add(row[2] + " (" + row[1] + "%)");
+            }
+        }
+        return new String[]{String.valueOf(variant), String.valueOf(seed),
+                String.valueOf(questionNumber), question[0][1], String.join(" | ", answers)};
+    }
+
+    // Writes the header and rows as UTF-8 CSV, leaving the stream open
+    public static void writeAnswerKey(List<String[]> rows, OutputStream out) throws IOException {
+        CSVWriter writer = new CSVWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.writeNext(ANSWER_KEY_HEADER);
+        writer.writeAll(rows);
+        writer.flush();
+    }
+
+    public interface VariantConsumer {
+        void accept(Variant variant) throws IOException;
+    }
+
+    public static class Variant {
+        public final int number;
+        public final long seed;
+        public final byte[] docx;
+        public final byte[] csv;
+        public final List<String[]> answerKey;
+        // Why the variant has no files, or null
+        public final String error;
+
+        public Variant(int number, long seed, byte[] docx, byte[] csv, List<String[]> answerKey) {
+            this.number = number;
+            this.seed = seed;
+            this.docx = docx;
+            this.csv = csv;
+            this.answerKey = answerKey;
+            this.error = null;
+        }
+
+        public Variant(int number, long seed, String error) {
+            this.number = number;
+            this.seed = seed;
+            this.docx = null;
+            this.csv = null;
+            this.answerKey = List.of();
+            this.error = error;
+        }
+    }
+}
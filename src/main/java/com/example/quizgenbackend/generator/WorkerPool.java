@@ -0,0 +1,347 @@
+package com.example.quizgenbackend.generator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// Long-lived worker JVMs that run compiled DynamicCode outside the service's own JVM. A heap blowup,
+// System.exit or leaked static in quiz code then only costs a worker, which is restarted on the next batch.
+public class WorkerPool implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(WorkerPool.class);
+    private static final long RESPONSE_SLACK_MILLIS = 5000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+
+    private final List<String> command;
+    private final Path classDirectory;
+    private final BlockingQueue<WorkerProcess> idleWorkers;
+    private final List<WorkerProcess> workers = new ArrayList<>();
+    private final ExecutorService responseReaders = Executors.newCachedThreadPool(ThreadFactories.named("worker-response-reader-"));
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong restarts = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+
+    public WorkerPool(int workerCount, String maxHeap) throws IOException {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("At least one worker is required");
+        }
+
+        // The service may run from a Spring Boot jar whose classes a plain java -cp cannot see,
+        // so the few classes the worker needs are copied out to a directory of their own
+        classDirectory = Files.createTempDirectory("quizgen-worker");
+        copyClass(ExecutionWorker.class);
+        copyClass(OutputCapture.class);
+
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        command = List.of(java, "-Xmx" + maxHeap, "-XX:+UseSerialGC", "-cp", classDirectory.toString(),
+                ExecutionWorker.class.getName());
+
+        idleWorkers = new ArrayBlockingQueue<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            WorkerProcess worker = new WorkerProcess();
+            workers.add(worker);
+            idleWorkers.add(worker);
+        }
+    }
+
+    // Runs the jobs on one worker and returns their results in the same order
+    public List<Result> execute(List<Job> jobs) {
+        if (jobs.isEmpty()) {
+            return List.of();
+        }
+
+        WorkerProcess worker;
+        try {
+            worker = idleWorkers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failAll(jobs, "interrupted while waiting for a worker");
+        }
+
+        batches.incrementAndGet();
+        long timeoutMillis = RESPONSE_SLACK_MILLIS;
+        for (Job job : jobs) {
+            timeoutMillis += job.wallClockMillis;
+        }
+
+        try {
+            if (!worker.isAlive()) {
+                worker.restart();
+            }
+
+            worker.send(jobs);
+            Future<List<Result>> response = responseReaders.submit(() -> worker.receive(jobs.size()));
+            List<Result> results = response.get(timeoutMillis, TimeUnit.MILLISECONDS);
+
+            // The worker exits by itself after a run it could not stop; replace it before anyone else borrows it.
+            // The results are good either way, and if the restart fails the next batch on this worker retries it.
+            if (results.stream().anyMatch(result -> result.status == ExecutionWorker.STATUS_TIMED_OUT)) {
+                worker.restartQuietly();
+            }
+            return results;
+        } catch (IOException | ExecutionException | TimeoutException e) {
+            // Broken pipe, System.exit in quiz code, a crashed or hung JVM: start over with a fresh one
+            failedBatches.incrementAndGet();
+            worker.restartQuietly();
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            String reason = cause instanceof EOFException ? "worker JVM exited while running the batch"
+                    : cause instanceof TimeoutException ? "worker JVM did not answer in time"
+                    : cause instanceof ProtocolException ? "worker JVM sent a malformed response: " + cause.getMessage()
+                    : "worker failed: " + cause;
+            return failAll(jobs, reason);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            worker.restartQuietly();
+            return failAll(jobs, "interrupted while waiting for the worker");
+        } finally {
+            idleWorkers.add(worker);
+        }
+    }
+
+    private static List<Result> failAll(List<Job> jobs, String message) {
+        List<Result> results = new ArrayList<>();
+        for (int i = 0; i < jobs.size(); i++) {
+            results.add(new Result(ExecutionWorker.STATUS_FAILED, message));
+        }
+        return results;
+    }
+
+    private void copyClass(Class<?> type) throws IOException {
+        for (Class<?> member : type.getNestMembers()) {
+            String resource = member.getName().replace('.', '/') + ".class";
+            try (InputStream in = member.getClassLoader().getResourceAsStream(resource)) {
+                if (in == null) {
+                    throw new IOException("Missing class file " + resource);
+                }
+                Path target = classDirectory.resolve(resource);
+                Files.createDirectories(target.getParent());
+                Files.copy(in, target);
+            }
+        }
+    }
+
+    public int size() {
+        return workers.size();
+    }
+
+    public long batchCount() {
+        return batches.get();
+    }
+
+    public long restartCount() {
+        return restarts.get();
+    }
+
+    public long failedBatchCount() {
+        return failedBatches.get();
+    }
+
+    @Override
+    public void close() {
+        for (WorkerProcess worker : workers) {
+            worker.stop();
+        }
+        responseReaders.shutdownNow();
+        try (Stream<Path> paths = Files.walk(classDirectory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            log.warn("Could not remove {}: {}", classDirectory, e.toString());
+        }
+    }
+
+    // Compiled DynamicCode to run, with the QuizBindings values for this variant and the sandbox's budgets
+    public static class Job {
+        public final String packageName;
+        public final Map<String, byte[]> classBytes;
+        public final Map<String, Object> bindings;
+        public final long wallClockMillis;
+        public final long cpuTimeMillis;
+
+        public Job(String packageName, Map<String, byte[]> classBytes, Map<String, Object> bindings, long wallClockMillis, long cpuTimeMillis) {
+            this.packageName = packageName;
+            this.classBytes = classBytes;
+            this.bindings = bindings;
+            this.wallClockMillis = wallClockMillis;
+            this.cpuTimeMillis = cpuTimeMillis;
+        }
+    }
+
+    // What a job printed, or why it did not finish
+    public static class Result {
+        public final int status;
+        public final String output;
+
+        public Result(int status, String output) {
+            this.status = status;
+            this.output = output;
+        }
+
+        public boolean isOk() {
+            return status == ExecutionWorker.STATUS_OK;
+        }
+    }
+
+    // The protocol runs over a loopback socket the worker connects back to, never over its stdin and stdout,
+    // which executed code can write to. Its stdout is discarded and stderr goes to the service's.
+    private class WorkerProcess {
+        private Process process;
+        private Socket socket;
+        private DataOutputStream in;
+        private DataInputStream out;
+
+        WorkerProcess() throws IOException {
+            start();
+        }
+
+        private void start() throws IOException {
+            String token = UUID.randomUUID().toString();
+            try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+                List<String> workerCommand = new ArrayList<>(command);
+                workerCommand.add(String.valueOf(server.getLocalPort()));
+                workerCommand.add(token);
+                process = new ProcessBuilder(workerCommand)
+                        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start();
+                process.getOutputStream().close();
+
+                try {
+                    socket = accept(server, token);
+                } catch (IOException e) {
+                    process.destroyForcibly();
+                    throw e;
+                }
+            }
+            in = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        }
+
+        // Waits for the worker to connect, ignoring any other local connection that does not present its token
+        private Socket accept(ServerSocket server, String token) throws IOException {
+            long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+            while (true) {
+                int remaining = (int) (deadline - System.currentTimeMillis());
+                if (remaining <= 0 || !process.isAlive()) {
+                    throw new IOException("worker JVM did not connect");
+                }
+                server.setSoTimeout(remaining);
+                Socket candidate;
+                try {
+                    candidate = server.accept();
+                } catch (SocketTimeoutException e) {
+                    continue;
+                }
+                try {
+                    candidate.setSoTimeout(remaining);
+                    if (token.equals(new DataInputStream(candidate.getInputStream()).readUTF())) {
+                        candidate.setSoTimeout(0);
+                        return candidate;
+                    }
+                } catch (IOException e) {
+                    // Not our worker
+                }
+                candidate.close();
+            }
+        }
+
+        boolean isAlive() {
+            return process.isAlive() && !socket.isClosed();
+        }
+
+        void stop() {
+            process.destroyForcibly();
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                    // Already gone
+                }
+            }
+        }
+
+        void restart() throws IOException {
+            stop();
+            restarts.incrementAndGet();
+            start();
+        }
+
+        void restartQuietly() {
+            try {
+                restart();
+            } catch (IOException e) {
+                // Left dead; the next batch on this worker tries again
+                log.warn("Could not restart execution worker", e);
+            }
+        }
+
+        void send(List<Job> jobs) throws IOException {
+            in.writeInt(jobs.size());
+            for (Job job : jobs) {
+                in.writeUTF(job.packageName);
+                in.writeLong(job.wallClockMillis);
+                in.writeLong(job.cpuTimeMillis);
+
+                in.writeInt(job.classBytes.size());
+                for (Map.Entry<String, byte[]> classFile : job.classBytes.entrySet()) {
+                    in.writeUTF(classFile.getKey());
+                    in.writeInt(classFile.getValue().length);
+                    in.write(classFile.getValue());
+                }
+
+                in.writeInt(job.bindings.size());
+                for (Map.Entry<String, Object> binding : job.bindings.entrySet()) {
+                    in.writeUTF(binding.getKey());
+                    if (binding.getValue() instanceof Integer) {
+                        in.writeByte(ExecutionWorker.INT_BINDING);
+                        in.writeInt((Integer) binding.getValue());
+                    } else {
+                        in.writeByte(ExecutionWorker.DOUBLE_BINDING);
+                        in.writeDouble(((Number) binding.getValue()).doubleValue());
+                    }
+                }
+            }
+            in.flush();
+        }
+
+        // Nothing read from the worker is trusted: every count, status and length is checked before it is used
+        List<Result> receive(int expectedCount) throws IOException {
+            int count = out.readInt();
+            if (count != expectedCount) {
+                throw new ProtocolException("expected " + expectedCount + " results, got " + count);
+            }
+            List<Result> results = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int status = out.readByte();
+                if (status != ExecutionWorker.STATUS_OK && status != ExecutionWorker.STATUS_FAILED
+                        && status != ExecutionWorker.STATUS_TIMED_OUT) {
+                    throw new ProtocolException("unknown status " + status);
+                }
+                int length = out.readInt();
+                if (length < 0 || length > ExecutionWorker.MAX_RESULT_BYTES) {
+                    throw new ProtocolException("result length " + length + " out of range");
+                }
+                byte[] text = new byte[length];
+                out.readFully(text);
+                results.add(new Result(status, new String(text, StandardCharsets.UTF_8)));
+            }
+            return results;
+        }
+    }
+}
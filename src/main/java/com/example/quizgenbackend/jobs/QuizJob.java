@@ -0,0 +1,87 @@
+package com.example.quizgenbackend.jobs;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// One submitted generation. The fields are written by the job thread and read by whoever polls.
+public class QuizJob {
+    public enum State { QUEUED, RUNNING, DONE, FAILED }
+
+    private final String id;
+    private final int questionCount;
+    private final long submittedAt = System.currentTimeMillis();
+    private final AtomicInteger questionsDone = new AtomicInteger();
+    private volatile State state = State.QUEUED;
+    private volatile String error;
+    private volatile byte[] result;
+    private volatile long finishedAt;
+
+    QuizJob(String id, int questionCount) {
+        this.id = id;
+        this.questionCount = questionCount;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public State state() {
+        return state;
+    }
+
+    // The ZIP once the job is DONE, otherwise null
+    public byte[] result() {
+        return result;
+    }
+
+    public String error() {
+        return error;
+    }
+
+    public int questionsDone() {
+        return questionsDone.get();
+    }
+
+    public int questionCount() {
+        return questionCount;
+    }
+
+    public long finishedAt() {
+        return finishedAt;
+    }
+
+    void started() {
+        state = State.RUNNING;
+    }
+
+    void questionDone() {
+        questionsDone.incrementAndGet();
+    }
+
+    void succeeded(byte[] zip) {
+        result = zip;
+        finishedAt = System.currentTimeMillis();
+        state = State.DONE;
+    }
+
+    void failed(String message) {
+        error = message;
+        finishedAt = System.currentTimeMillis();
+        state = State.FAILED;
+    }
+
+    // What GET /quiz/jobs/{id} answers with
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("id", id);
+        status.put("state", state);
+        status.put("questionsDone", questionsDone.get());
+        status.put("questionCount", questionCount);
+        status.put("submittedAt", submittedAt);
+        if (error != null) {
+            status.put("error", error);
+        }
+        return status;
+    }
+}
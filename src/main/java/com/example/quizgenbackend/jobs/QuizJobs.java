@@ -0,0 +1,120 @@
+package com.example.quizgenbackend.jobs;
+
+import com.example.quizgenbackend.cache.WeightedLruCache;
+import com.example.quizgenbackend.generator.QuizArchive;
+import com.example.quizgenbackend.generator.QuizTemplate;
+import com.example.quizgenbackend.generator.ThreadFactories;
+import com.example.quizgenbackend.generator.VariableContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Generates quizzes in the background so a request only has to hand over the template and can poll for the
+// result. Jobs run on a few threads behind a bounded queue; once that is full, submit refuses instead of
+// piling up work. Finished jobs stay retrievable for a while, within a cap on the bytes their results take.
+public class QuizJobs {
+    // Bookkeeping of a finished job on top of its ZIP
+    private static final long JOB_OVERHEAD_BYTES = 512;
+
+    private static final Map<String, QuizJob> pending = new ConcurrentHashMap<>();
+    private static final WeightedLruCache<String, QuizJob> finished = new WeightedLruCache<>(64L * 1024 * 1024,
+            job -> JOB_OVERHEAD_BYTES + (job.result() == null ? 0 : job.result().length));
+
+    private static volatile ThreadPoolExecutor executor = newExecutor(2, 16);
+    private static volatile long resultTtlMillis = TimeUnit.MINUTES.toMillis(10);
+
+    public static void configure(int threads, int queueCapacity, long maxResultBytes, long ttlMillis) {
+        ThreadPoolExecutor previous = executor;
+        executor = newExecutor(threads, queueCapacity);
+        previous.shutdown();
+        finished.setMaxWeight(maxResultBytes);
+        resultTtlMillis = ttlMillis;
+    }
+
+    private static ThreadPoolExecutor newExecutor(int threads, int queueCapacity) {
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                ThreadFactories.named("quiz-job-"));
+    }
+
+    // Queues the generation and returns its job, or throws RejectedExecutionException when the queue is full
+    public static QuizJob submit(QuizTemplate template) {
+        evictExpired();
+
+        QuizJob job = new QuizJob(UUID.randomUUID().toString(), template.questionCount());
+        pending.put(job.id(), job);
+        try {
+            executor.execute(() -> run(job, template));
+        } catch (RejectedExecutionException e) {
+            pending.remove(job.id());
+            throw e;
+        }
+        return job;
+    }
+
+    // The job, or null when it is unknown, expired or was evicted to make room for newer results
+    public static QuizJob get(String id) {
+        QuizJob job = pending.get(id);
+        if (job != null) {
+            return job;
+        }
+
+        job = finished.get(id);
+        if (job != null && isExpired(job, System.currentTimeMillis())) {
+            finished.remove(id);
+            return null;
+        }
+        return job;
+    }
+
+    private static void run(QuizJob job, QuizTemplate template) {
+        job.started();
+        try {
+            ByteArrayOutputStream zip = new ByteArrayOutputStream();
+            QuizArchive.write(template, new VariableContext(), zip, rows -> job.questionDone());
+            if (JOB_OVERHEAD_BYTES + zip.size() > finished.maxWeight()) {
+                // The store would drop it right away and the job would seem to have vanished
+                job.failed("The result of " + zip.size() + " bytes is larger than the result store");
+            } else {
+                job.succeeded(zip.toByteArray());
+            }
+        } catch (IOException | RuntimeException e) {
+            job.failed(e.getMessage() != null ? e.getMessage() : e.toString());
+        } catch (Error e) {
+            // OutOfMemoryError, StackOverflowError and the like still end the job, then go on to the thread's handler
+            job.failed(e.toString());
+            throw e;
+        } finally {
+            if (job.state() == QuizJob.State.RUNNING) {
+                // Even recording the failure can fail when memory has run out
+                job.failed("Generation failed");
+            }
+            // Stored before it leaves pending, so a poll in between never misses it
+            finished.put(job.id(), job);
+            pending.remove(job.id());
+        }
+    }
+
+    private static void evictExpired() {
+        long now = System.currentTimeMillis();
+        finished.removeIf(job -> isExpired(job, now));
+    }
+
+    private static boolean isExpired(QuizJob job, long now) {
+        return now - job.finishedAt() > resultTtlMillis;
+    }
+
+    public static int pendingCount() {
+        return pending.size();
+    }
+
+    public static int queueDepth() {
+        return executor.getQueue().size();
+    }
+}
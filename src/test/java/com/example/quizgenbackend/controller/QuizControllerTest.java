@@ -0,0 +1,82 @@
+package com.example.quizgenbackend.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "quizgen.warm-up.enabled=false",
+        "quizgen.executor.wall-clock-ms=2000",
+        "quizgen.executor.cpu-time-ms=1000"
+})
+class QuizControllerTest {
+    private static final String ENDLESS_LOOP = String.join("\n",
+            "Title: Loop",
+            "Question #1:",
+            ":Code:",
+            "while (true) {}",
+            ":EndCode:",
+            "QuestionType: SA",
+            "Solution:");
+
+    @Autowired
+    private TestRestTemplate rest;
+
+    // The run is cut off after the download headers were set but before a byte of the ZIP went out
+    @Test
+    void generateAnswersCodeThatRunsOutOfTimeWithAnError() {
+        ResponseEntity<String> response = rest.postForEntity("/quiz/generate", Map.of("input", ENDLESS_LOOP), String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+        assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.TEXT_PLAIN);
+        assertThat(response.getHeaders().containsKey(HttpHeaders.CONTENT_DISPOSITION)).isFalse();
+        assertThat(response.getBody())
+                .startsWith("Question 1")
+                .containsPattern("DynamicCode exceeded the (CPU-time|wall-clock) budget");
+    }
+
+    @Test
+    void variantsAnswerCodeThatRunsOutOfTimeWithAnError() {
+        ResponseEntity<String> response = rest.postForEntity("/quiz/variants",
+                Map.of("input", ENDLESS_LOOP, "count", "2", "seed", "1"), String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+        assertThat(response.getBody()).contains("DynamicCode exceeded the");
+    }
+
+    @Test
+    void generateAnswersCodeThatDoesNotCompileWithABadRequest() {
+        String input = ENDLESS_LOOP.replace("while (true) {}", "int x = ;");
+
+        ResponseEntity<String> response = rest.postForEntity("/quiz/generate", Map.of("input", input), String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(response.getBody()).startsWith("Question 1");
+    }
+
+    // Without Access-Control-Expose-Headers the frontend could not read the seed, the ETag or a job's Location
+    @Test
+    void crossOriginResponsesExposeTheSeedAndTheEtag() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setOrigin("http://localhost:4200");
+        String input = "Title: Exposed\nQuestion #1:\nSolution: 1 + 1\nSolutionType: int\nUnit: {}";
+
+        ResponseEntity<String> response = rest.postForEntity("/quiz/output",
+                new HttpEntity<>(Map.of("input", input, "seed", "3"), headers), String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getETag()).isNotNull();
+        assertThat(response.getHeaders().getAccessControlExposeHeaders())
+                .contains("X-Quiz-Seed", HttpHeaders.ETAG, HttpHeaders.LOCATION);
+    }
+}
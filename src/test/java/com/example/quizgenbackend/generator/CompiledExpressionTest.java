@@ -0,0 +1,106 @@
+package com.example.quizgenbackend.generator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompiledExpressionTest {
+
+    // Values the shunting-yard evaluator gave for + - * / % before formulas were compiled
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "2-3-4        | -5",
+            "8/2/2        | 2",
+            "2+3*4        | 14",
+            "(2+3)*4      | 20",
+            "10-4+3       | 9",
+            "2*3%4        | 2",
+            "7%4*3        | 9",
+            "100/10*2     | 20",
+            "1+2*3-4/2    | 5",
+            "((1+2))*(3)  | 9",
+            "3.5*2        | 7",
+            " 1 +  2      | 3",
+    })
+    void keepsOldPrecedenceAndAssociativity(String expression, double expected) {
+        assertThat(CompiledExpression.compile(expression).evaluate()).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "-2^2         | -4",
+            "2^3^2        | 512",
+            "(-2)^2       | 4",
+            "2^-1         | 0.5",
+            "10 - -3      | 13",
+            "-3*-2        | 6",
+            "--4          | 4",
+            "+4           | 4",
+            "2*3^2        | 18",
+    })
+    void unaryMinusAndPower(String expression, double expected) {
+        assertThat(CompiledExpression.compile(expression).evaluate()).isEqualTo(expected);
+    }
+
+    @Test
+    void functionsAndConstants() {
+        assertThat(CompiledExpression.compile("sqrt(16) + max(2, 5)").evaluate()).isEqualTo(9);
+        assertThat(CompiledExpression.compile("round(2.5) * abs(-1)").evaluate()).isEqualTo(3);
+        assertThat(CompiledExpression.compile("cos(pi)").evaluate()).isEqualTo(-1);
+        assertThat(CompiledExpression.compile("1.0E-5 * 100000").evaluate()).isEqualTo(1);
+    }
+
+    @Test
+    void placeholdersBecomeSlotsInOrderOfAppearance() {
+        CompiledExpression compiled = CompiledExpression.compile("#a# - #b# * #a#");
+
+        assertThat(compiled.variableNames()).containsExactly("a", "b");
+        assertThat(compiled.evaluate(3, 2)).isEqualTo(-3);
+        assertThat(compiled.evaluate(5, 1)).isEqualTo(0);
+    }
+
+    @Test
+    void missingSlotValuesAreRejected() {
+        assertThatThrownBy(() -> CompiledExpression.compile("#a# + #b#").evaluate(1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "2 +",
+            "(2 + 3",
+            "2 $ 3",
+            "#a + 1",
+            "foo(2)",
+            "sqrt(1, 2)",
+    })
+    void malformedExpressionsAreRejected(String expression) {
+        assertThatThrownBy(() -> CompiledExpression.compile(expression))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("at position");
+    }
+
+    @Test
+    void numericVariablesFillTheSlots() {
+        VariableContext variables = new VariableContext();
+        variables.putInt("x", 4);
+        variables.putDouble("y", 0.5);
+        variables.putText("z", "3");
+
+        assertThat(EvaluateExpression.evaluateExpression("#x# * #y# - #z#", variables)).isEqualTo(-1);
+    }
+
+    @Test
+    void textVariablesArePastedIntoTheFormula() {
+        VariableContext variables = new VariableContext();
+        variables.putText("x", "2*3");
+        variables.putInt("y", 4);
+
+        // Pasted as text, so precedence applies across the substituted value: 1 + 2*3*4
+        assertThat(EvaluateExpression.evaluateExpression("1 + #x# * #y#", variables)).isEqualTo(25);
+        assertThat(EvaluateExpression.evaluateExpression("(#x#) - #y#", variables)).isEqualTo(2);
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.quizgenbackend.generator;
+
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.apache.xmlbeans.XmlCursor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DocxWriterTest {
+    private static final String DOCUMENT_START = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+            + "<w:document xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\"><w:body><w:p>";
+    private static final String DOCUMENT_END = "</w:p></w:body></w:document>";
+
+    // The entries of a ZIP in the order they were written
+    private static Map<String, byte[]> entryBytes(byte[] zip) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                entries.put(entry.getName(), in.readAllBytes());
+            }
+        }
+        return entries;
+    }
+
+    private static Map<String, String> entries(byte[] zip) throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entryBytes(zip).forEach((name, bytes) -> entries.put(name, new String(bytes, StandardCharsets.UTF_8)));
+        return entries;
+    }
+
+    private static String body(String documentXml) {
+        assertThat(documentXml).startsWith(DOCUMENT_START).endsWith(DOCUMENT_END);
+        return documentXml.substring(DOCUMENT_START.length(), documentXml.length() - DOCUMENT_END.length());
+    }
+
+    // Each run as Word reads it back: B or - for bold or not, then its text, <cr/> and <br/> in order
+    private static List<String> runs(byte[] docx) throws IOException {
+        List<String> runs = new ArrayList<>();
+        try (XWPFDocument document = new XWPFDocument(new ByteArrayInputStream(docx))) {
+            assertThat(document.getParagraphs()).hasSize(1);
+            for (XWPFParagraph paragraph : document.getParagraphs()) {
+                for (XWPFRun run : paragraph.getRuns()) {
+                    StringBuilder line = new StringBuilder(run.isBold() ? "B " : "- ");
+                    try (XmlCursor cursor = run.getCTR().newCursor()) {
+                        for (boolean more = cursor.toFirstChild(); more; more = cursor.toNextSibling()) {
+                            String name = cursor.getName().getLocalPart();
+                            if (name.equals("t")) {
+                                line.append('"').append(escape(cursor.getTextValue())).append('"');
+                            } else if (!name.equals("rPr")) {
+                                line.append('<').append(name).append("/>");
+                            }
+                        }
+                    }
+                    runs.add(line.toString());
+                }
+            }
+        }
+        return runs;
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\r", "\\r").replace("\n", "\\n").replace("\t", "\\t");
+    }
+
+    @Test
+    void writesNothingBeforeTheFirstRun() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DocxWriter document = new DocxWriter(out);
+        assertThat(out.size()).isZero();
+
+        document.run("Title: Quiz", false, false, false, 1);
+        assertThat(out.size()).isPositive();
+    }
+
+    @Test
+    void writesThePackagePartsThenTheRuns() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DocxWriter document = new DocxWriter(out);
+        document.run("Title: Quiz", false, false, false, 1);
+        document.run("bold", true, true, false, 0);
+        document.run(" a < b && c > d ", false, false, true, 2);
+        document.finish();
+
+        Map<String, String> entries = entries(out.toByteArray());
+        assertThat(entries.keySet()).containsExactly(
+                "[Content_Types].xml", "_rels/.rels", "docProps/core.xml", "word/document.xml");
+        assertThat(entries.get("[Content_Types].xml"))
+                .contains("<Override PartName=\"/word/document.xml\"")
+                .contains("<Override PartName=\"/docProps/core.xml\"");
+        assertThat(entries.get("_rels/.rels"))
+                .contains("Target=\"word/document.xml\"")
+                .contains("Target=\"docProps/core.xml\"");
+        assertThat(entries.get("docProps/core.xml")).contains("<cp:coreProperties").doesNotContain("created");
+
+        assertThat(body(entries.get("word/document.xml"))).isEqualTo(
+                "<w:r><w:t>Title: Quiz</w:t><w:br/></w:r>"
+                        + "<w:r><w:rPr><w:b/></w:rPr><w:cr/><w:t>bold</w:t></w:r>"
+                        + "<w:r><w:t xml:space=\"preserve\"> a &lt; b &amp;&amp; c &gt; d </w:t><w:cr/><w:br/><w:br/></w:r>");
+    }
+
+    @Test
+    void escapesCarriageReturnsAndDropsOtherControlCharacters() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DocxWriter document = new DocxWriter(out);
+        document.run("a\rb\u0001c\td", false, false, false, 0);
+        document.finish();
+
+        assertThat(body(entries(out.toByteArray()).get("word/document.xml")))
+                .isEqualTo("<w:r><w:t>a&#13;bc\td</w:t></w:r>");
+    }
+
+    @Test
+    void dropsCharactersXmlCannotHold() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DocxWriter document = new DocxWriter(out);
+        document.run("a\uD83D\uDE00b\uD83Dc\uDE00d\uFFFEe\uFFFFf\uFFFDg", false, false, false, 0);
+        document.finish();
+
+        assertThat(body(entries(out.toByteArray()).get("word/document.xml")))
+                .isEqualTo("<w:r><w:t>a\uD83D\uDE00bcdef\uFFFDg</w:t></w:r>");
+        assertThat(runs(out.toByteArray())).containsExactly("- \"a\uD83D\uDE00bcdef\uFFFDg\"");
+    }
+
+    // The benchmark corpus, read back with POI, has the runs the XWPF-based generator gave it with the same seed
+    @ParameterizedTest
+    @ValueSource(strings = {"arithmetic", "choices", "code-heavy", "long-text"})
+    void corpusTemplatesReadBackWithTheRunsOfTheXwpfDocument(String name) throws IOException {
+        QuizTemplate template = TemplateParser.parse(Files.readString(Path.of("src/jmh/resources/templates", name + ".txt")));
+        byte[] docx = QuizGenerator.generateQuizFile(template, new VariableContext(new Random(1)),
+                EnumSet.of(OutputFormat.DOCX)).docxBytes;
+
+        List<String> expected;
+        try (InputStream in = DocxWriterTest.class.getResourceAsStream("/docx/" + name + ".runs")) {
+            expected = new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+        }
+        assertThat(runs(docx)).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void finishWithoutRunsStillWritesAWholePackage() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new DocxWriter(out).finish();
+
+        Map<String, String> entries = entries(out.toByteArray());
+        assertThat(entries.keySet()).containsExactly(
+                "[Content_Types].xml", "_rels/.rels", "docProps/core.xml", "word/document.xml");
+        assertThat(body(entries.get("word/document.xml"))).isEmpty();
+    }
+
+    @Test
+    void archiveHoldsTheDocumentAndTheCsv() throws IOException {
+        QuizTemplate template = TemplateParser.parse(String.join("\n",
+                "Title: Carts",
+                "Question #1:",
+                "#R1: int, random, 3, 3",
+                ":Text:",
+                "How far does a cart go?",
+                "In <b>#R1#</b> s at 2 m/s",
+                ":EndText:",
+                "Solution: #R1# * 2",
+                "SolutionType: int",
+                "Unit: {m}"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        QuizArchive.write(template, new VariableContext(new Random(1)), out);
+
+        Map<String, byte[]> archive = entryBytes(out.toByteArray());
+        assertThat(archive.keySet()).containsExactly("quiz.docx", "quiz.csv");
+        assertThat(new String(archive.get("quiz.csv"), StandardCharsets.UTF_8))
+                .contains("NewQuestion")
+                .contains("Carts");
+
+        Map<String, String> parts = entries(archive.get("quiz.docx"));
+        assertThat(parts.keySet()).containsExactly(
+                "[Content_Types].xml", "_rels/.rels", "docProps/core.xml", "word/document.xml");
+        assertThat(body(parts.get("word/document.xml"))).isEqualTo(
+                "<w:r><w:t>Title: Carts</w:t><w:br/></w:r>"
+                        + "<w:r><w:t>1. How far does a cart go?</w:t><w:br/></w:r>"
+                        + "<w:r><w:t xml:space=\"preserve\">In </w:t></w:r>"
+                        + "<w:r><w:rPr><w:b/></w:rPr><w:t>3</w:t></w:r>"
+                        + "<w:r><w:t xml:space=\"preserve\"> s at 2 m/s</w:t><w:br/></w:r>"
+                        + "<w:r><w:t>[6m]</w:t><w:br/><w:br/></w:r>");
+    }
+
+    // Nothing in the archive depends on when it was built, so the same template and seed give the same bytes
+    @Test
+    void archiveIsAFunctionOfTemplateAndSeed() throws IOException, InterruptedException {
+        QuizTemplate template = TemplateParser.parse(String.join("\n",
+                "Title: Twice",
+                "Question #1:",
+                "#R1: int, random, 1, 100",
+                ":Text:",
+                "Double #R1#",
+                ":EndText:",
+                "Solution: #R1# * 2",
+                "SolutionType: int",
+                "Unit: {}"));
+
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        QuizArchive.write(template, new VariableContext(new Random(7)), first);
+        // ZIP times are kept to two seconds
+        Thread.sleep(2100);
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        QuizArchive.write(template, new VariableContext(new Random(7)), second);
+
+        assertThat(second.toByteArray()).isEqualTo(first.toByteArray());
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(first.toByteArray()))) {
+            for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                assertThat(entry.getTimeLocal()).isEqualTo("1980-01-01T00:00");
+            }
+        }
+    }
+
+    // The document's first run opens quiz.docx, so code that does not compile fails before out sees a byte
+    @Test
+    void archiveOfCodeThatDoesNotCompileWritesNothing() {
+        QuizTemplate template = TemplateParser.parse(String.join("\n",
+                "Question #1:",
+                ":Code:",
+                "int x = ;",
+                ":EndCode:",
+                "QuestionType: SA",
+                "Solution:"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThatThrownBy(() -> QuizArchive.write(template, new VariableContext(new Random(1)), out))
+                .isInstanceOf(CompilationBatch.CompilationException.class)
+                .hasMessageContaining("Question 1");
+        assertThat(out.size()).isZero();
+    }
+}
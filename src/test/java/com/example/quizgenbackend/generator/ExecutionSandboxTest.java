@@ -0,0 +1,136 @@
+package com.example.quizgenbackend.generator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+@Timeout(30)
+class ExecutionSandboxTest {
+    private volatile boolean spinning;
+
+    // Takes the sandbox's only slot until the returned latch is counted down
+    private static CountDownLatch occupy(ExecutionSandbox sandbox) throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> sandbox.run(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        holder.setDaemon(true);
+        holder.start();
+        while (sandbox.activeCount() == 0) {
+            Thread.sleep(5);
+        }
+        return release;
+    }
+
+    @Test
+    void runsWithinBudgetComplete() {
+        ExecutionSandbox sandbox = new ExecutionSandbox(1, 0, 0, 5000, 5000);
+        StringBuilder ran = new StringBuilder();
+
+        sandbox.run(() -> ran.append("done"));
+
+        assertThat(ran.toString()).isEqualTo("done");
+        assertThat(sandbox.completedCount()).isEqualTo(1);
+        assertThat(sandbox.timeoutCount()).isZero();
+        assertThat(sandbox.activeCount()).isZero();
+    }
+
+    @Test
+    void runIsRejectedWhenTheQueueIsFull() throws InterruptedException {
+        ExecutionSandbox sandbox = new ExecutionSandbox(1, 0, 1000, 5000, 5000);
+        CountDownLatch release = occupy(sandbox);
+        try {
+            assertThatThrownBy(() -> sandbox.run(() -> { }))
+                    .isInstanceOf(ExecutionSandbox.ExecutionLimitException.class)
+                    .hasMessage("rejected, 0 executions are already waiting");
+        } finally {
+            release.countDown();
+        }
+
+        assertThat(sandbox.rejectionCount()).isEqualTo(1);
+        assertThat(sandbox.queueDepth()).isZero();
+    }
+
+    @Test
+    void runIsRejectedWhenNoSlotFreesUpInTime() throws InterruptedException {
+        ExecutionSandbox sandbox = new ExecutionSandbox(1, 1, 100, 5000, 5000);
+        CountDownLatch release = occupy(sandbox);
+        try {
+            assertThatThrownBy(() -> sandbox.run(() -> { }))
+                    .isInstanceOf(ExecutionSandbox.ExecutionLimitException.class)
+                    .hasMessage("rejected, no execution slot became free within 100 ms");
+        } finally {
+            release.countDown();
+        }
+
+        assertThat(sandbox.rejectionCount()).isEqualTo(1);
+        assertThat(sandbox.queueDepth()).isZero();
+    }
+
+    // A sleeping run uses no CPU, so only the wall clock ends it; the interrupt is enough to stop it
+    @Test
+    void runIsStoppedAfterItsWallClockBudget() {
+        ExecutionSandbox sandbox = new ExecutionSandbox(1, 0, 0, 200, 5000);
+        long start = System.nanoTime();
+
+        assertThatThrownBy(() -> sandbox.run(() -> {
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }))
+                .isInstanceOf(ExecutionSandbox.ExecutionLimitException.class)
+                .hasMessage("exceeded the wall-clock budget of 200 ms");
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(5000);
+        assertThat(sandbox.timeoutCount()).isEqualTo(1);
+        assertThat(sandbox.cancellationCount()).isEqualTo(1);
+        assertThat(sandbox.abandonedCount()).isZero();
+        assertThat(sandbox.completedCount()).isZero();
+        assertThat(sandbox.activeCount()).isZero();
+    }
+
+    // A busy loop ignores interrupts, so it is stopped outright, or abandoned where Thread.stop is gone
+    @Test
+    void runIsStoppedAfterItsCpuTimeBudget() {
+        assumeTrue(ManagementFactory.getThreadMXBean().isThreadCpuTimeSupported());
+        ExecutionSandbox sandbox = new ExecutionSandbox(1, 0, 0, 20000, 200);
+        spinning = true;
+        try {
+            assertThatThrownBy(() -> sandbox.run(() -> {
+                while (spinning) {
+                    Thread.onSpinWait();
+                }
+            }))
+                    .isInstanceOf(ExecutionSandbox.ExecutionLimitException.class)
+                    .hasMessage("exceeded the CPU-time budget of 200 ms");
+        } finally {
+            spinning = false;
+        }
+
+        assertThat(sandbox.timeoutCount()).isEqualTo(1);
+        assertThat(sandbox.cancellationCount() + sandbox.abandonedCount()).isEqualTo(1);
+        if (Runtime.version().feature() < 20) {
+            assertThat(sandbox.cancellationCount()).isEqualTo(1);
+        }
+        assertThat(sandbox.completedCount()).isZero();
+    }
+
+    @Test
+    void atLeastOneConcurrentRunIsRequired() {
+        assertThatThrownBy(() -> new ExecutionSandbox(0, 0, 0, 1000, 1000))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.quizgenbackend.generator;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+class MarkupTokenizerTest {
+
+    static Stream<Arguments> lines() {
+        return Stream.of(
+                arguments("plain text", List.of("plain text")),
+                arguments("", List.of("")),
+                arguments("<b>bold</b> tail", List.of("<b>bold</b>", " tail")),
+                arguments("head <b>bold</b>", List.of("head ", "<b>bold</b>")),
+                arguments(" <b>x</b>", List.of(" ", "<b>x</b>")),
+                arguments("a <b>b</b> c <b>d</b> e", List.of("a ", "<b>b</b>", " c ", "<b>d</b>", " e")),
+                arguments("<b></b>", List.of("<b></b>")),
+                arguments("<b></b><b></b>", List.of("<b></b>", "<b></b>")),
+                // Nested tags
+                arguments("<b>a <b>b</b> c</b>", List.of("<b>a ", "<b>b</b>", " c</b>")),
+                arguments("<b><b>x</b></b>", List.of("<b>", "<b>x</b>", "</b>")),
+                // Unterminated and stray tags
+                arguments("<b>never closed", List.of("<b>never closed")),
+                arguments("closed only</b> here", List.of("closed only</b>", " here")),
+                arguments("</b></b>x", List.of("</b>", "</b>", "x")),
+                arguments("</b>", List.of("</b>")),
+                arguments("x <b", List.of("x <b")),
+                arguments("a </b", List.of("a </b")),
+                // Other angle brackets are text
+                arguments("a < b <= c", List.of("a < b <= c")),
+                arguments("<bold> is not <b>", List.of("<bold> is not ", "<b>")),
+                arguments("<B>upper</B>", List.of("<B>upper</B>")));
+    }
+
+    @ParameterizedTest
+    @MethodSource("lines")
+    void splitsBeforeEveryOpeningAndAfterEveryClosingTag(String line, List<String> parts) {
+        assertThat(MarkupTokenizer.split(line)).containsExactlyElementsOf(parts);
+    }
+
+    // The regex split the tokenizer replaced, which the rendered runs must still match
+    @ParameterizedTest
+    @MethodSource("lines")
+    void cutsWhereTheRegexSplitCut(String line, List<String> parts) {
+        assertThat(MarkupTokenizer.split(line)).containsExactly(line.split("(?=<b>)|(?<=</b>)"));
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "<b>bold</b>  | true",
+            "<b>open      | true",
+            "<b>          | true",
+            "text<b>      | true",
+            "plain        | false",
+            "close</b>    | false",
+            "<B>upper</B> | false",
+    })
+    void boldPartsStartOrEndWithAnOpeningTag(String part, boolean bold) {
+        assertThat(MarkupTokenizer.isBold(part)).isEqualTo(bold);
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "plain            | false | plain",
+            "<b>bold</b>      | true  | bold",
+            "<b>a <b>b</b>    | true  | a b",
+            "tail</b>         | false | tail",
+            "a &gt; b &lt; c  | false | a > b < c",
+            "&lt;b&gt;        | false | <b>",
+            "<b>x &amp; y</b> | true  | x &amp; y",
+            "<i>kept</i>      | false | <i>kept</i>",
+    })
+    void textRunsDropBoldTagsAndDecodeAngleBrackets(String part, boolean bold, String text) {
+        assertThat(MarkupTokenizer.textRun(part, bold)).isEqualTo(text);
+    }
+}
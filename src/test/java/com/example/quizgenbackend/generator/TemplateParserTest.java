@@ -0,0 +1,180 @@
+package com.example.quizgenbackend.generator;
+
+import com.example.quizgenbackend.QuizOutput;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TemplateParserTest {
+
+    private static String template(String... lines) {
+        return String.join("\n", lines);
+    }
+
+    @Test
+    void parsesEverySection() {
+        QuizTemplate template = TemplateParser.parse(template(
+                "## comment lines and blank lines are skipped",
+                "Title: Units",
+                "",
+                "Question #1:",
+                "QuestionType: SA",
+                "#R1: int, random, 1, 10",
+                ":Code:",
+                "System.out.println(#R1#);",
+                ":EndCode:",
+                "Solution:",
+                "Question #2:",
+                "QuestionType: MC",
+                ":Linked:",
+                "#S1: { red, green }",
+                "#P1: from #S1#",
+                ":Choices:",
+                "100, #P1#",
+                "0, blue",
+                ":EndChoices:",
+                "Solution:",
+                "Question #3:",
+                "#R2: double, random, 2, 5",
+                "#A1: #R2#, add, 3",
+                ":Text:",
+                "How far is #A1#?",
+                ":EndText:",
+                "Solution: #A1# * 2",
+                "SolutionType: int",
+                "Unit: {m, meters}"));
+
+        assertThat(template.statements()).containsExactly(
+                new QuizTemplate.Title(2, "Units"),
+                new QuizTemplate.QuestionStart(4, "1"),
+                new QuizTemplate.QuestionType(5, "SA"),
+                new QuizTemplate.RandomInt(6, "R1", 1, 10),
+                new QuizTemplate.CodeSection(7, List.of("System.out.println(#R1#);")),
+                new QuizTemplate.ExecutedSolution(10),
+                new QuizTemplate.QuestionStart(11, "2"),
+                new QuizTemplate.QuestionType(12, "MC"),
+                new QuizTemplate.Linked(13),
+                new QuizTemplate.SetVariable(14, "S1", List.of(" red", " green ")),
+                new QuizTemplate.PickVariable(15, "P1", "S1"),
+                new QuizTemplate.ChoicesSection(16, List.of(
+                        new QuizTemplate.Choice(100, " #P1#"),
+                        new QuizTemplate.Choice(0, " blue"))),
+                new QuizTemplate.ExecutedSolution(20),
+                new QuizTemplate.QuestionStart(21, "3"),
+                new QuizTemplate.RandomDouble(22, "R2", 2, 5),
+                new QuizTemplate.AddVariable(23, "A1", "R2", 3),
+                new QuizTemplate.TextSection(24, List.of("How far is #A1#?")),
+                new QuizTemplate.EvaluatedSolution(27, "#A1# * 2", "int", List.of("m", "meters")));
+        assertThat(template.questionCount()).isEqualTo(3);
+        assertThat(template.warnings()).isEmpty();
+    }
+
+    @Test
+    void solutionTypeDefaultsToDoubleWhenTheLineIsSomethingElse() {
+        QuizTemplate template = TemplateParser.parse(template(
+                "Question #1:",
+                "Solution: 1 + 2",
+                "Something else",
+                "Unit: {kg}"));
+
+        assertThat(template.statements()).containsExactly(
+                new QuizTemplate.QuestionStart(1, "1"),
+                new QuizTemplate.EvaluatedSolution(2, "1 + 2", "double", List.of("kg")));
+    }
+
+    @Test
+    void windowsLineBreaksCountAsOneLine() {
+        QuizTemplate template = TemplateParser.parse("Title: A\r\n\r\nQuestion #7:\r\n");
+
+        assertThat(template.statements()).containsExactly(
+                new QuizTemplate.Title(1, "A"),
+                new QuizTemplate.QuestionStart(3, "7"));
+    }
+
+    @Test
+    void workaroundsBecomeWarningsWithTheirLine() {
+        QuizTemplate template = TemplateParser.parse(template(
+                "Question #1:",
+                ":Choices:",
+                "100, right",
+                "lots, wrong",
+                ":EndChoices:",
+                ":Text:",
+                "never closed"));
+
+        assertThat(template.warnings()).containsExactly(
+                "line 4: Skipping invalid entry: lots, wrong",
+                "line 6: section has no :EndText:");
+    }
+
+    // Each template has its problem on the line given, after a comment and a blank line that still count.
+    // An escaped \n in the problem starts another line.
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "Question #1                   | 3 | Expected Question #<number>:",
+            "#                             | 3 | Expected a two-character variable name",
+            "#R1: int, random, 9, 3        | 3 | The maximum 3 is below the minimum 9",
+            "#R1: int, random, one, 3      | 3 | Not a whole number",
+            "#R1: int, random, 1           | 3 | Expected int, random, <min>, <max>",
+            "#R1: int                      | 3 | Expected <type>, <generation>",
+            "#P1: from S1                  | 3 | Expected a #name# reference",
+            "#A1: #R1#, add                | 3 | Expected <name>, <method>, <value>",
+            "Solution: 2 +                 | 3 | Expression ended early",
+            "Solution: 2\\nSolutionType: int | 3 | must be followed by a SolutionType: and a Unit: line",
+            "Solution: 2\\nSolutionType: int\\nkg | 5 | Expected Unit: {<unit>, ...}",
+    })
+    void templateExceptionsCarryTheLineNumber(String problem, int line, String message) {
+        String input = template("## a comment", "", problem.replace("\\n", "\n"));
+
+        assertThatThrownBy(() -> TemplateParser.parse(input))
+                .isInstanceOfSatisfying(TemplateParser.TemplateException.class,
+                        e -> assertThat(e.lineNumber()).isEqualTo(line))
+                .hasMessageStartingWith("line " + line + ": ")
+                .hasMessageContaining(message);
+    }
+
+    @Test
+    void parseCachedReturnsTheSameTemplateForTheSameInput() {
+        String input = template("Title: Cached " + System.nanoTime(), "Question #1:");
+
+        assertThat(TemplateParser.parseCached(input)).isSameAs(TemplateParser.parseCached(input));
+    }
+
+    // The loop that replaced placeholders never advanced past a # without a partner and spun forever
+    @Test
+    @Timeout(5)
+    void isolatedHashMarkIsLeftAsItIs() {
+        VariableContext variables = new VariableContext();
+        variables.putInt("R1", 3);
+
+        assertThat(QuizGenerator.replaceVariables("Press # to continue", variables)).isEqualTo("Press # to continue");
+        assertThat(QuizGenerator.replaceVariables("#R1# costs 5#", variables)).isEqualTo("3 costs 5#");
+    }
+
+    @Test
+    @Timeout(30)
+    void isolatedHashMarkInATemplateStillGenerates() {
+        QuizTemplate template = TemplateParser.parse(template(
+                "Question #1:",
+                "#R1: int, random, 4, 4",
+                ":Text:",
+                "Dial #R1# then press #",
+                ":EndText:",
+                "Solution: #R1# + 1",
+                "SolutionType: int",
+                "Unit: {}"));
+
+        QuizOutput output = QuizGenerator.generateQuizFile(template, new VariableContext(new Random(1)),
+                EnumSet.of(OutputFormat.TEXT));
+
+        assertThat(output.plainText).contains("Dial 4 then press #");
+    }
+}